@@ -0,0 +1,69 @@
+package com.dalibormucak.im.springrestapi.models;
+
+import com.dalibormucak.im.springrestapi.models.dtos.ProductDTO;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//    product mapping and the JSON serialization behind the product listing endpoints
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProductSerializationBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    private int numOfProducts;
+
+    private ObjectMapper objectMapper;
+    private ProductDTO productDTO;
+    private List<Product> products;
+
+    @Setup
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        productDTO = new ProductDTO("203V5LSB26", "Monitor Philips", new BigDecimal("1000.00"),
+                "Enjoy vivid LED pictures with this attractive, glossy design display.", true);
+        products = new ArrayList<>(numOfProducts);
+        for (int id = 1; id <= numOfProducts; id++) {
+            products.add(Product.builder()
+                    .id(id)
+                    .code(String.format("P%09d", id))
+                    .name("Monitor Philips " + id)
+                    .price_hrk(new BigDecimal("1000.00"))
+                    .price_eur(new BigDecimal("132.87"))
+                    .description("Enjoy vivid LED pictures with this attractive, glossy design display.")
+                    .is_available(id % 2 == 0)
+                    .version(0L)
+                    .build());
+        }
+    }
+
+    @Benchmark
+    public Product toProduct() {
+        return productDTO.toProduct();
+    }
+
+    @Benchmark
+    public byte[] serializeProducts() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(products);
+    }
+}
@@ -0,0 +1,100 @@
+package com.dalibormucak.im.springrestapi.repositories;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+
+//    PostgreSQL for the JDBC benchmarks: an embedded server started from the zonky binaries, or an existing
+//    database given with -jvmArgsAppend -Dbenchmark.jdbc.url=... to measure on production-like hardware;
+//    the benchmarks work on their own benchmark_product table, which is dropped again when they finish;
+//    public for the benchmarks of the other layers that also read over JDBC
+public final class BenchmarkDatabase {
+
+    public static final int PRODUCT_COUNT = 10_000;
+
+    private static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS benchmark_product (" +
+            "id SERIAL PRIMARY KEY, code VARCHAR(10) UNIQUE, name VARCHAR(32), price_hrk DECIMAL(12, 2), " +
+            "price_eur DECIMAL(12, 2), description VARCHAR(128), is_available BOOLEAN NOT NULL, " +
+            "version BIGINT NOT NULL DEFAULT 0)";
+
+    private final EmbeddedPostgres embeddedPostgres;
+    private final String jdbcUrl;
+    private final String username;
+    private final String password;
+
+    private BenchmarkDatabase(EmbeddedPostgres embeddedPostgres, String jdbcUrl, String username, String password) {
+        this.embeddedPostgres = embeddedPostgres;
+        this.jdbcUrl = jdbcUrl;
+        this.username = username;
+        this.password = password;
+    }
+
+    public static BenchmarkDatabase start() throws IOException, SQLException {
+        String jdbcUrl = System.getProperty("benchmark.jdbc.url");
+        BenchmarkDatabase database = jdbcUrl != null
+                ? new BenchmarkDatabase(null, jdbcUrl, System.getProperty("benchmark.jdbc.username", "postgres"),
+                System.getProperty("benchmark.jdbc.password", "postgres"))
+                : startEmbedded();
+        database.createProducts();
+        return database;
+    }
+
+    private static BenchmarkDatabase startEmbedded() throws IOException {
+        EmbeddedPostgres embeddedPostgres = EmbeddedPostgres.start();
+        return new BenchmarkDatabase(embeddedPostgres, embeddedPostgres.getJdbcUrl("postgres", "postgres"),
+                "postgres", "postgres");
+    }
+
+//    the same pool settings as the production profile apart from the ones being compared
+    public HikariDataSource dataSource(int poolSize, Properties dataSourceProperties) {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(jdbcUrl);
+        config.setUsername(username);
+        config.setPassword(password);
+        config.setMaximumPoolSize(poolSize);
+        config.setMinimumIdle(poolSize);
+        config.setDataSourceProperties(dataSourceProperties);
+        return new HikariDataSource(config);
+    }
+
+    public void stop() throws IOException, SQLException {
+        try (HikariDataSource dataSource = dataSource(1, new Properties());
+             Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS benchmark_product");
+        } finally {
+            if (embeddedPostgres != null) {
+                embeddedPostgres.close();
+            }
+        }
+    }
+
+    private void createProducts() throws SQLException {
+        try (HikariDataSource dataSource = dataSource(1, new Properties());
+             Connection connection = dataSource.getConnection()) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("DROP TABLE IF EXISTS benchmark_product");
+                statement.execute(CREATE_TABLE);
+            }
+            connection.setAutoCommit(false);
+            try (PreparedStatement insert = connection.prepareStatement(ProductJdbcBenchmark.INSERT)) {
+                for (int i = 0; i < PRODUCT_COUNT; i++) {
+                    ProductJdbcBenchmark.bindProduct(insert, String.format("S%09d", i));
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            }
+            connection.commit();
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("ANALYZE benchmark_product");
+            }
+        }
+    }
+}
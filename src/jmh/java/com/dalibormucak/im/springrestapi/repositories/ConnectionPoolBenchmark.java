@@ -0,0 +1,88 @@
+package com.dalibormucak.im.springrestapi.repositories;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+//    throughput of 32 concurrent request threads doing a short read-modify-write transaction
+//    (the PUT /api/products/{id} path) with different pool sizes; past the point where the database
+//    is saturated a larger pool only adds contention inside PostgreSQL
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(32)
+@Fork(1)
+public class ConnectionPoolBenchmark {
+
+    private static final String SELECT_VERSION = "SELECT version FROM benchmark_product WHERE id = ?";
+    private static final String UPDATE_PRICE = "UPDATE benchmark_product " +
+            "SET price_hrk = price_hrk + 1, version = version + 1 WHERE id = ? AND version = ?";
+
+    @Param({"4", "10", "20", "32"})
+    public int poolSize;
+
+    private BenchmarkDatabase database;
+    private HikariDataSource dataSource;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        database = BenchmarkDatabase.start();
+        Properties properties = new Properties();
+        properties.setProperty("tcpNoDelay", "true");
+        dataSource = database.dataSource(poolSize, properties);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException, SQLException {
+        dataSource.close();
+        database.stop();
+    }
+
+    @Benchmark
+    public int updateProduct() throws SQLException {
+        int id = ThreadLocalRandom.current().nextInt(1, BenchmarkDatabase.PRODUCT_COUNT + 1);
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement select = connection.prepareStatement(SELECT_VERSION);
+                 PreparedStatement update = connection.prepareStatement(UPDATE_PRICE)) {
+                select.setInt(1, id);
+                long version;
+                try (ResultSet resultSet = select.executeQuery()) {
+                    resultSet.next();
+                    version = resultSet.getLong(1);
+                }
+                update.setInt(1, id);
+                update.setLong(2, version);
+                int updated = update.executeUpdate();
+                connection.commit();
+                return updated;
+            } catch (SQLException ex) {
+                connection.rollback();
+                throw ex;
+            }
+        }
+    }
+}
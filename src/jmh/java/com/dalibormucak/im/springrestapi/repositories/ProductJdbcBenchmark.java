@@ -0,0 +1,194 @@
+package com.dalibormucak.im.springrestapi.repositories;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+//    the pgjdbc and Hibernate JDBC settings of the production profile compared with the driver defaults:
+//    batched inserts with and without reWriteBatchedInserts and tcpNoDelay, lookups by id with and without
+//    server-side prepared statements and reading the whole table with different fetch sizes
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProductJdbcBenchmark {
+
+    static final String INSERT = "INSERT INTO benchmark_product " +
+            "(code, name, price_hrk, price_eur, description, is_available) VALUES (?, ?, ?, ?, ?, ?)";
+    private static final String SELECT_BY_ID = "SELECT id, code, name, price_hrk, price_eur, description, " +
+            "is_available, version FROM benchmark_product WHERE id = ?";
+    private static final String SELECT_ALL = "SELECT id, code, name, price_hrk, price_eur, description, " +
+            "is_available, version FROM benchmark_product";
+    private static final int BATCH_SIZE = 50;
+
+    private BenchmarkDatabase database;
+
+    @State(Scope.Benchmark)
+    public static class BatchInsert {
+
+        @Param({"false", "true"})
+        public boolean reWriteBatchedInserts;
+
+//        false is the driver default, a batch larger than the socket send buffer then waits on delayed ACKs
+        @Param({"false", "true"})
+        public boolean tcpNoDelay;
+
+        private HikariDataSource dataSource;
+
+        @Setup
+        public void setUp(ProductJdbcBenchmark benchmark) {
+            Properties properties = new Properties();
+            properties.setProperty("reWriteBatchedInserts", String.valueOf(reWriteBatchedInserts));
+            properties.setProperty("tcpNoDelay", String.valueOf(tcpNoDelay));
+            dataSource = benchmark.database.dataSource(1, properties);
+        }
+
+        @TearDown
+        public void tearDown() {
+            dataSource.close();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Lookup {
+
+//        0 never prepares on the server, 5 is the driver default
+        @Param({"0", "1", "5"})
+        public int prepareThreshold;
+
+        private HikariDataSource dataSource;
+
+        @Setup
+        public void setUp(ProductJdbcBenchmark benchmark) {
+            Properties properties = new Properties();
+            properties.setProperty("prepareThreshold", String.valueOf(prepareThreshold));
+            dataSource = benchmark.database.dataSource(1, properties);
+        }
+
+        @TearDown
+        public void tearDown() {
+            dataSource.close();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class FullScan {
+
+//        0 reads the whole result set into memory at once, which is the driver default
+        @Param({"0", "100", "1000"})
+        public int fetchSize;
+
+        private HikariDataSource dataSource;
+
+        @Setup
+        public void setUp(ProductJdbcBenchmark benchmark) {
+            dataSource = benchmark.database.dataSource(1, new Properties());
+        }
+
+        @TearDown
+        public void tearDown() {
+            dataSource.close();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        database = BenchmarkDatabase.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException, SQLException {
+        database.stop();
+    }
+
+//    the inserted rows are rolled back, so every invocation inserts into a table of the same size
+    @Benchmark
+    public int[] insertBatch(BatchInsert batchInsert) throws SQLException {
+        try (Connection connection = batchInsert.dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement insert = connection.prepareStatement(INSERT)) {
+                for (int i = 0; i < BATCH_SIZE; i++) {
+                    bindProduct(insert, String.format("B%09d", i));
+                    insert.addBatch();
+                }
+                return insert.executeBatch();
+            } finally {
+                connection.rollback();
+            }
+        }
+    }
+
+    @Benchmark
+    public void findById(Lookup lookup, Blackhole blackhole) throws SQLException {
+        try (Connection connection = lookup.dataSource.getConnection();
+             PreparedStatement select = connection.prepareStatement(SELECT_BY_ID)) {
+            select.setInt(1, ThreadLocalRandom.current().nextInt(1, BenchmarkDatabase.PRODUCT_COUNT + 1));
+            try (ResultSet resultSet = select.executeQuery()) {
+                consumeRows(resultSet, blackhole);
+            }
+        }
+    }
+
+//    pgjdbc only streams the rows with a fetch size when autocommit is off, as inside @Transactional
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void findAll(FullScan fullScan, Blackhole blackhole) throws SQLException {
+        try (Connection connection = fullScan.dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement select = connection.prepareStatement(SELECT_ALL)) {
+                select.setFetchSize(fullScan.fetchSize);
+                try (ResultSet resultSet = select.executeQuery()) {
+                    consumeRows(resultSet, blackhole);
+                }
+            } finally {
+                connection.commit();
+            }
+        }
+    }
+
+    static void bindProduct(PreparedStatement insert, String code) throws SQLException {
+        insert.setString(1, code);
+        insert.setString(2, "Monitor Philips");
+        insert.setBigDecimal(3, new BigDecimal("1000.00"));
+        insert.setBigDecimal(4, new BigDecimal("132.87"));
+        insert.setString(5, "Enjoy vivid LED pictures with this attractive, glossy design display.");
+        insert.setBoolean(6, true);
+    }
+
+    private static void consumeRows(ResultSet resultSet, Blackhole blackhole) throws SQLException {
+        while (resultSet.next()) {
+            blackhole.consume(resultSet.getInt(1));
+            blackhole.consume(resultSet.getString(2));
+            blackhole.consume(resultSet.getString(3));
+            blackhole.consume(resultSet.getBigDecimal(4));
+            blackhole.consume(resultSet.getBigDecimal(5));
+            blackhole.consume(resultSet.getString(6));
+            blackhole.consume(resultSet.getBoolean(7));
+            blackhole.consume(resultSet.getLong(8));
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.dalibormucak.im.springrestapi.services;
+
+import com.dalibormucak.im.springrestapi.models.dtos.JsonPatchOperationDTO;
+import com.dalibormucak.im.springrestapi.models.dtos.ProductDTO;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.fge.jsonpatch.JsonPatch;
+import com.github.fge.jsonpatch.JsonPatchException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//    PATCH application through a JsonNode tree and the json-patch library (the previous implementation)
+//    compared with the ProductPatcher, run with -prof gc to compare gc.alloc.rate.norm
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProductPatcherBenchmark {
+
+    private static final String PATCH = "[" +
+            "{ \"op\": \"test\", \"path\": \"/is_available\", \"value\": true }," +
+            "{ \"op\": \"replace\", \"path\": \"/price_hrk\", \"value\": 800.00 }," +
+            "{ \"op\": \"replace\", \"path\": \"/name\", \"value\": \"Monitor Philips 27\" }]";
+
+    private ProductDTO productDTO;
+    private JsonPatch jsonPatch;
+    private List<JsonPatchOperationDTO> productPatch;
+    private ProductPatcher productPatcher;
+
+    @Setup
+    public void setUp() throws IOException {
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        productDTO = new ProductDTO("203V5LSB26", "Monitor Philips", new BigDecimal("1000.00"),
+                "Enjoy vivid LED pictures with this attractive, glossy design display.", true);
+        jsonPatch = objectMapper.readValue(PATCH, JsonPatch.class);
+        productPatch = objectMapper.readValue(PATCH, new TypeReference<>() {});
+        productPatcher = new ProductPatcher(objectMapper);
+    }
+
+    @Benchmark
+    public ProductDTO jsonPatchLibrary() throws JsonPatchException, JsonProcessingException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        JsonNode patched = jsonPatch.apply(objectMapper.convertValue(productDTO, JsonNode.class));
+        return objectMapper.treeToValue(patched, ProductDTO.class);
+    }
+
+    @Benchmark
+    public ProductDTO productPatcher() throws JsonPatchException, JsonProcessingException {
+        return productPatcher.applyPatch(productPatch, productDTO);
+    }
+}
@@ -0,0 +1,65 @@
+package com.dalibormucak.im.springrestapi.services;
+
+import com.dalibormucak.im.springrestapi.models.dtos.ProductDTO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.validation.Validation;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+//    service layer hot paths of every product write
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProductServiceBenchmark {
+
+    private static final BigDecimal EXCHANGE_RATE_EUR_TO_KN = new BigDecimal("7.526206");
+
+    private ProductDTO productDTO;
+    private ProductDTO invalidProductDTO;
+    private ProgrammaticallyValidatingService validatingService;
+    private BigDecimal priceInKn;
+
+    @Setup
+    public void setUp() {
+        productDTO = new ProductDTO("203V5LSB26", "Monitor Philips", new BigDecimal("1000.00"),
+                "Enjoy vivid LED pictures with this attractive, glossy design display.", true);
+        invalidProductDTO = new ProductDTO("203.V5@B20", "Monitor Philips", new BigDecimal("-1000.00"),
+                "Enjoy vivid LED pictures with this attractive, glossy design display.", true);
+        validatingService = new ProgrammaticallyValidatingService(
+                Validation.buildDefaultValidatorFactory().getValidator());
+        priceInKn = new BigDecimal("1234.56");
+    }
+
+    @Benchmark
+    public void validateValidObject() {
+        validatingService.validateObject(productDTO);
+    }
+
+    @Benchmark
+    public void validateInvalidObject(Blackhole blackhole) {
+        try {
+            validatingService.validateObject(invalidProductDTO);
+        } catch (RuntimeException ex) {
+            blackhole.consume(ex);
+        }
+    }
+
+    @Benchmark
+    public BigDecimal calcPriceInEur() {
+        return ProductService.calcPriceInEur(priceInKn, EXCHANGE_RATE_EUR_TO_KN);
+    }
+}
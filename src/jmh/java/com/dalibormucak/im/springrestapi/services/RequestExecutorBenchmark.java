@@ -0,0 +1,111 @@
+package com.dalibormucak.im.springrestapi.services;
+
+import com.dalibormucak.im.springrestapi.repositories.BenchmarkDatabase;
+import com.zaxxer.hikari.HikariDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+//    a model of request handling, not Tomcat itself: 400 benchmark threads submit tasks to a fixed pool of
+//    200 platform threads, the size of Tomcat's default pool, or to a virtual thread per task executor and wait
+//    for them; a task reads a product over a HikariCP pool of 10 connections, the production pool size, and then
+//    sleeps, standing in for a blocking call that holds no connection such as an HNB API request on a rate cache
+//    miss; HTTP parsing, Spring MVC and Hibernate are left out; the virtual executor needs a Java 21 runtime:
+//    -jvm /path/to/jdk-21/bin/java, and livelocks in the HikariCP 4 connection handoff without a sleep on a single core
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 5)
+@Threads(400)
+@Fork(1)
+public class RequestExecutorBenchmark {
+
+    private static final String SELECT_BY_ID = "SELECT id, code, name, price_hrk, price_eur, description, " +
+            "is_available, version FROM benchmark_product WHERE id = ?";
+    private static final int TOMCAT_MAX_THREADS = 200;
+    private static final int POOL_SIZE = 10;
+
+    @Param({"platform", "virtual"})
+    public String executor;
+
+    @Param({"0", "20"})
+    public int blockingCallMillis;
+
+    private BenchmarkDatabase database;
+    private HikariDataSource dataSource;
+    private ExecutorService requestExecutor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        requestExecutor = executor.equals("virtual")
+                ? virtualThreadPerTaskExecutor() : Executors.newFixedThreadPool(TOMCAT_MAX_THREADS);
+        database = BenchmarkDatabase.start();
+        Properties properties = new Properties();
+        properties.setProperty("tcpNoDelay", "true");
+        properties.setProperty("prepareThreshold", "5");
+        dataSource = database.dataSource(POOL_SIZE, properties);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException, SQLException, InterruptedException {
+        requestExecutor.shutdown();
+        requestExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        dataSource.close();
+        database.stop();
+    }
+
+    @Benchmark
+    public String request() throws InterruptedException, ExecutionException {
+        return requestExecutor.submit(this::handleRequest).get();
+    }
+
+    private String handleRequest() throws SQLException, InterruptedException {
+        int id = ThreadLocalRandom.current().nextInt(1, BenchmarkDatabase.PRODUCT_COUNT + 1);
+        String code;
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement select = connection.prepareStatement(SELECT_BY_ID)) {
+            select.setInt(1, id);
+            try (ResultSet resultSet = select.executeQuery()) {
+                resultSet.next();
+                code = resultSet.getString("code");
+            }
+        }
+        if (blockingCallMillis > 0) {
+            Thread.sleep(blockingCallMillis);
+        }
+        return code;
+    }
+
+//    looked up reflectively like in VirtualThreadsConfig, the benchmarks are compiled for Java 17
+    private static ExecutorService virtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException("The virtual executor requires a Java 21 or newer runtime", ex);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.dalibormucak.im.springrestapi.config;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.PhysicalConnectionHandlingMode;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+//    read-only transactions are served by a pool per replica in datasource.replicas.urls, everything else
+//    by the primary pool configured with the spring.datasource properties; the replica pools copy the settings
+//    of the primary pool apart from their url, name, connection timeout and optionally credentials;
+//    read-only transactions do not put what they read into the second-level cache
+@Configuration
+@Profile("!reactive")
+@ConditionalOnProperty(name = "datasource.replicas.urls")
+public class DataSourceRoutingConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    public ReadReplicaRoutingDataSource readReplicaRoutingDataSource(
+            HikariDataSource primaryDataSource,
+            @Value("${datasource.replicas.urls}") List<String> urls,
+            @Value("${datasource.replicas.username:${spring.datasource.username:}}") String username,
+            @Value("${datasource.replicas.password:${spring.datasource.password:}}") String password,
+            @Value("${datasource.replicas.connection-timeout:PT1S}") Duration connectionTimeout,
+            @Value("${datasource.replicas.health-check-interval:PT5S}") Duration healthCheckInterval,
+            @Value("${datasource.replicas.validation-timeout:PT1S}") Duration validationTimeout) {
+        String primaryPoolName = primaryDataSource.getPoolName() == null ? "primary-pool" : primaryDataSource.getPoolName();
+        List<ReadReplicaRoutingDataSource.Replica> replicas = new ArrayList<>(urls.size());
+        for (int i = 0; i < urls.size(); i++) {
+            HikariConfig config = new HikariConfig();
+            primaryDataSource.copyStateTo(config);
+            config.setJdbcUrl(urls.get(i));
+            config.setUsername(username);
+            config.setPassword(password);
+            config.setPoolName(primaryPoolName + "-replica-" + (i + 1));
+//            a replica that is down delays the reads by at most this long before they go to the next one
+            config.setConnectionTimeout(connectionTimeout.toMillis());
+//            a write routed to a replica by mistake fails instead of reaching a standby that may accept it
+            config.setReadOnly(true);
+            replicas.add(new ReadReplicaRoutingDataSource.Replica(config.getPoolName(), new HikariDataSource(config)));
+        }
+        ReadReplicaRoutingDataSource routingDataSource = new ReadReplicaRoutingDataSource(primaryDataSource, replicas,
+                Math.max(1, (int) validationTimeout.toSeconds()));
+        routingDataSource.startHealthChecks(healthCheckInterval);
+        return routingDataSource;
+    }
+
+//    the read-only flag is only known once the transaction has started, the lazy proxy asks the routing data source
+//    for a connection when the first statement runs
+    @Bean
+    @Primary
+    public DataSource dataSource(ReadReplicaRoutingDataSource readReplicaRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(readReplicaRoutingDataSource);
+    }
+
+//    with open session in view a session keeps its connection for the whole request by default,
+//    releasing it after every transaction lets each transaction of the request be routed on its own
+    @Bean
+    public HibernatePropertiesCustomizer connectionHandlingCustomizer() {
+        return properties -> properties.put(AvailableSettings.CONNECTION_HANDLING,
+                PhysicalConnectionHandlingMode.DELAYED_ACQUISITION_AND_RELEASE_AFTER_TRANSACTION);
+    }
+
+//    a product read from a lagging replica must not be put into the second-level cache; the dialect is set before
+//    the entity manager factory is built, the transaction manager takes it from there
+    @Bean
+    public static BeanPostProcessor readReplicaJpaDialectPostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                if (bean instanceof LocalContainerEntityManagerFactoryBean) {
+                    ((LocalContainerEntityManagerFactoryBean) bean).setJpaDialect(new ReadReplicaJpaDialect());
+                }
+                return bean;
+            }
+        };
+    }
+}
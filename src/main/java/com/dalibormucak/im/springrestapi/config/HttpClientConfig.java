@@ -0,0 +1,29 @@
+package com.dalibormucak.im.springrestapi.config;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+
+@Configuration
+public class HttpClientConfig {
+
+//    the JDK client keeps a pool of persistent connections and sends requests asynchronously,
+//    so a slow HNB API never pins a request thread
+    @Bean
+    public HttpClient hnbApiHttpClient(@Value("${hnb.api.connect-timeout:PT2S}") Duration connectTimeout,
+                                       @Qualifier("virtualThreadExecutor")
+                                       ObjectProvider<ExecutorService> virtualThreadExecutor) {
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(connectTimeout);
+        virtualThreadExecutor.ifAvailable(builder::executor);
+        return builder.build();
+    }
+
+}
@@ -0,0 +1,56 @@
+package com.dalibormucak.im.springrestapi.config;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.orm.jpa.vendor.HibernateJpaDialect;
+import org.springframework.transaction.TransactionDefinition;
+
+import javax.persistence.CacheStoreMode;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
+import java.sql.SQLException;
+
+//    read-only transactions may be served by a lagging replica, so their entity manager only reads the second-level
+//    cache and puts nothing into it; the store mode is set as an entity manager property because EntityManager.find
+//    derives the cache mode from the properties again, and the previous one is restored when the transaction ends,
+//    as an entity manager kept open for the whole request also runs its write transactions
+class ReadReplicaJpaDialect extends HibernateJpaDialect {
+
+    @Override
+    public Object beginTransaction(EntityManager entityManager, TransactionDefinition definition)
+            throws PersistenceException, SQLException {
+        Object transactionData = super.beginTransaction(entityManager, definition);
+        if (!definition.isReadOnly()) {
+            return transactionData;
+        }
+        Object previousStoreMode = entityManager.getProperties().get(AvailableSettings.JPA_SHARED_CACHE_STORE_MODE);
+        entityManager.setProperty(AvailableSettings.JPA_SHARED_CACHE_STORE_MODE, CacheStoreMode.BYPASS);
+        return new ReadOnlyTransactionData(transactionData, entityManager,
+                previousStoreMode == null ? CacheStoreMode.USE : previousStoreMode);
+    }
+
+    @Override
+    public void cleanupTransaction(Object transactionData) {
+        if (transactionData instanceof ReadOnlyTransactionData) {
+            ReadOnlyTransactionData readOnlyTransactionData = (ReadOnlyTransactionData) transactionData;
+            readOnlyTransactionData.entityManager.setProperty(AvailableSettings.JPA_SHARED_CACHE_STORE_MODE,
+                    readOnlyTransactionData.previousStoreMode);
+            super.cleanupTransaction(readOnlyTransactionData.transactionData);
+        } else {
+            super.cleanupTransaction(transactionData);
+        }
+    }
+
+    private static class ReadOnlyTransactionData {
+
+        private final Object transactionData;
+        private final EntityManager entityManager;
+        private final Object previousStoreMode;
+
+        private ReadOnlyTransactionData(Object transactionData, EntityManager entityManager,
+                                        Object previousStoreMode) {
+            this.transactionData = transactionData;
+            this.entityManager = entityManager;
+            this.previousStoreMode = previousStoreMode;
+        }
+    }
+}
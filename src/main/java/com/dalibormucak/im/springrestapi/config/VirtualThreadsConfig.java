@@ -0,0 +1,93 @@
+package com.dalibormucak.im.springrestapi.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+//    runs Tomcat request handling, asynchronous MVC responses and the HNB API client on virtual threads;
+//    the executor is looked up reflectively so that the application still compiles for and runs on Java 17,
+//    while enabling the option requires a Java 21 runtime; compiling for Java 21 waits for the Spring Boot 3
+//    upgrade, as does HikariCP 5.1, whose connection handoff does not livelock virtual threads (see README.md),
+//    so until then enabling the option fails the startup instead of risking a livelock in production
+@Configuration
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+public class VirtualThreadsConfig {
+
+    private static final String HIKARI_POM_PROPERTIES = "/META-INF/maven/com.zaxxer/HikariCP/pom.properties";
+    private static final int[] MIN_HIKARI_VERSION = {5, 1};
+
+    public VirtualThreadsConfig() {
+        String hikariVersion = hikariVersion();
+        if (!isAtLeast(hikariVersion, MIN_HIKARI_VERSION)) {
+            throw new IllegalStateException("spring.threads.virtual.enabled=true requires HikariCP 5.1 or newer, " +
+                    "HikariCP " + hikariVersion + " livelocks virtual threads waiting for a connection " +
+                    "(see README.md); remove the property or upgrade HikariCP");
+        }
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService virtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException("Virtual threads require a Java 21 or newer runtime", ex);
+        }
+    }
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadsProtocolHandlerCustomizer(
+            ExecutorService virtualThreadExecutor) {
+        return protocolHandler -> protocolHandler.setExecutor(virtualThreadExecutor);
+    }
+
+    @Bean
+    public WebMvcConfigurer virtualThreadsAsyncSupportConfigurer(ExecutorService virtualThreadExecutor) {
+        return new WebMvcConfigurer() {
+            @Override
+            public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+                configurer.setTaskExecutor(new TaskExecutorAdapter(virtualThreadExecutor));
+            }
+        };
+    }
+
+//    HikariCP has no version constant, the version is read from the Maven metadata of its jar
+    private static String hikariVersion() {
+        try (InputStream pomProperties = HikariDataSource.class.getResourceAsStream(HIKARI_POM_PROPERTIES)) {
+            if (pomProperties == null) {
+                return "of an unknown version";
+            }
+            Properties properties = new Properties();
+            properties.load(pomProperties);
+            return properties.getProperty("version", "of an unknown version");
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static boolean isAtLeast(String version, int[] minVersion) {
+        String[] parts = version.split("[.-]");
+        try {
+            for (int i = 0; i < minVersion.length; i++) {
+                int part = i < parts.length ? Integer.parseInt(parts[i]) : 0;
+                if (part != minVersion[i]) {
+                    return part > minVersion[i];
+                }
+            }
+            return true;
+        } catch (NumberFormatException ex) {
+            return false;
+        }
+    }
+}
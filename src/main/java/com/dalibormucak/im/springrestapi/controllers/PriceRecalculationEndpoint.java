@@ -0,0 +1,28 @@
+package com.dalibormucak.im.springrestapi.controllers;
+
+import com.dalibormucak.im.springrestapi.models.PriceRecalculation;
+import com.dalibormucak.im.springrestapi.services.PriceRecalculationService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+//    progress of the EUR price recalculation at /actuator/pricerecalculation, 404 before the first run
+@Component
+@Profile("!reactive")
+@Endpoint(id = "pricerecalculation")
+public class PriceRecalculationEndpoint {
+
+    private final PriceRecalculationService priceRecalculationService;
+
+    @Autowired
+    public PriceRecalculationEndpoint(PriceRecalculationService priceRecalculationService) {
+        this.priceRecalculationService = priceRecalculationService;
+    }
+
+    @ReadOperation
+    public PriceRecalculation priceRecalculation() {
+        return priceRecalculationService.getProgress().orElse(null);
+    }
+}
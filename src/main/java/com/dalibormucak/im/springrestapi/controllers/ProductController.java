@@ -1,71 +1,321 @@
 package com.dalibormucak.im.springrestapi.controllers;
 
+import com.dalibormucak.im.springrestapi.models.ExchangeRate;
 import com.dalibormucak.im.springrestapi.models.Product;
+import com.dalibormucak.im.springrestapi.models.ProductExportFormat;
+import com.dalibormucak.im.springrestapi.models.ProductField;
+import com.dalibormucak.im.springrestapi.models.ProductFilter;
+import com.dalibormucak.im.springrestapi.models.ProductSortField;
+import com.dalibormucak.im.springrestapi.models.dtos.ProductLookupResultDTO;
+import com.dalibormucak.im.springrestapi.models.dtos.ProductPageDTO;
+import com.dalibormucak.im.springrestapi.models.dtos.BulkProductResultDTO;
+import com.dalibormucak.im.springrestapi.models.dtos.JsonPatchOperationDTO;
 import com.dalibormucak.im.springrestapi.models.dtos.ProductDTO;
+import com.dalibormucak.im.springrestapi.models.dtos.ProductFieldsDTO;
+import com.dalibormucak.im.springrestapi.models.dtos.ProductImportResultDTO;
+import com.dalibormucak.im.springrestapi.services.IdempotencyStore;
+import com.dalibormucak.im.springrestapi.services.ProductChangeFeed;
+import com.dalibormucak.im.springrestapi.services.ProductExportService;
+import com.dalibormucak.im.springrestapi.services.ProductImportService;
 import com.dalibormucak.im.springrestapi.services.ProductService;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.github.fge.jsonpatch.JsonPatch;
 import com.github.fge.jsonpatch.JsonPatchException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Valid;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.Pattern;
 import javax.validation.constraints.Positive;
+import javax.validation.constraints.PositiveOrZero;
+import javax.validation.constraints.Size;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @RestController
 @Validated
+@Profile("!reactive")
 @RequestMapping("/api/products")
 public class ProductController {
 
     private final ProductService productService;
+    private final ProductExportService productExportService;
+    private final ProductImportService productImportService;
+    private final IdempotencyStore idempotencyStore;
+    private final ProductChangeFeed productChangeFeed;
 
     @Autowired
-    public ProductController(ProductService productService) {
+    public ProductController(ProductService productService, ProductExportService productExportService,
+                             ProductImportService productImportService, IdempotencyStore idempotencyStore,
+                             ProductChangeFeed productChangeFeed) {
         this.productService = productService;
+        this.productExportService = productExportService;
+        this.productImportService = productImportService;
+        this.idempotencyStore = idempotencyStore;
+        this.productChangeFeed = productChangeFeed;
     }
 
     @GetMapping
-    public ResponseEntity<List<Product>> getAllProducts() {
-        return new ResponseEntity<>(productService.findAllProducts(), HttpStatus.OK);
+    public ResponseEntity<List<?>> getAllProducts(
+            @RequestParam(name = "currency", required = false)
+            @Pattern(regexp = "[A-Za-z]{3}", message = "Currency must be a three letter ISO 4217 code") String currency,
+            @RequestParam(name = "fields", required = false) String fields) {
+        Set<ProductField> requestedFields = fields == null ? null : ProductField.fromParameterNames(fields);
+        List<Product> products = productService.findAllProducts(readFields(requestedFields, currency));
+        return listResponse(products, currency, requestedFields);
+    }
+
+    @GetMapping("/page")
+    public ResponseEntity<ProductPageDTO<?>> getProductPage(
+            @RequestParam(name = "cursor", required = false) String cursor,
+            @RequestParam(name = "size", defaultValue = "20")
+            @Min(value = 1, message = "Page size must be at least 1")
+            @Max(value = 100, message = "Page size cannot exceed 100") Integer size,
+            @RequestParam(name = "sort", defaultValue = "id") String sort,
+            @RequestParam(name = "order", defaultValue = "asc")
+            @Pattern(regexp = "(?i)asc|desc", message = "Order must be asc or desc") String order,
+            @RequestParam(name = "is_available", required = false) Boolean isAvailable,
+            @RequestParam(name = "min_price_hrk", required = false)
+            @PositiveOrZero(message = "Minimum price cannot be negative") BigDecimal minPriceHrk,
+            @RequestParam(name = "max_price_hrk", required = false)
+            @PositiveOrZero(message = "Maximum price cannot be negative") BigDecimal maxPriceHrk,
+            @RequestParam(name = "currency", required = false)
+            @Pattern(regexp = "[A-Za-z]{3}", message = "Currency must be a three letter ISO 4217 code") String currency,
+            @RequestParam(name = "fields", required = false) String fields) {
+        Set<ProductField> requestedFields = fields == null ? null : ProductField.fromParameterNames(fields);
+        ProductPageDTO<Product> productPage = productService.findProductPage(
+                new ProductFilter(isAvailable, minPriceHrk, maxPriceHrk),
+                ProductSortField.fromParameterName(sort), Sort.Direction.fromString(order), cursor, size,
+                readFields(requestedFields, currency));
+        if (currency == null) {
+            return ResponseEntity.ok().varyBy(HttpHeaders.ACCEPT).eTag(ProductETags.of(productPage.getProducts()))
+                    .body(new ProductPageDTO<>(representations(productPage.getProducts(), requestedFields),
+                            productPage.getNextCursor()));
+        }
+        ExchangeRate exchangeRate = productService.findExchangeRate(currency);
+        return ResponseEntity.ok().varyBy(HttpHeaders.ACCEPT)
+                .eTag(ProductETags.of(productPage.getProducts(), exchangeRate))
+                .body(new ProductPageDTO<>(productService.convertPrices(productPage.getProducts(), exchangeRate,
+                        requestedFields), productPage.getNextCursor()));
+    }
+
+    @GetMapping("/search")
+    public ResponseEntity<List<?>> searchProducts(
+            @RequestParam(name = "q")
+            @Size(min = 3, max = 64, message = "Search term must have between 3 and 64 characters") String term,
+            @RequestParam(name = "page", defaultValue = "0")
+            @PositiveOrZero(message = "Page cannot be negative")
+            @Max(value = 1000, message = "Page cannot exceed 1000") Integer page,
+            @RequestParam(name = "size", defaultValue = "20")
+            @Min(value = 1, message = "Page size must be at least 1")
+            @Max(value = 100, message = "Page size cannot exceed 100") Integer size,
+            @RequestParam(name = "currency", required = false)
+            @Pattern(regexp = "[A-Za-z]{3}", message = "Currency must be a three letter ISO 4217 code") String currency,
+            @RequestParam(name = "fields", required = false) String fields) {
+        Set<ProductField> requestedFields = fields == null ? null : ProductField.fromParameterNames(fields);
+        List<Product> products = productService.searchProducts(term, page, size,
+                readFields(requestedFields, currency));
+        return listResponse(products, currency, requestedFields);
+    }
+
+//    e.g. ?ids=3,1,7&codes=203V5LSB26, one result per requested id and code in the order of the request
+    @GetMapping("/batch")
+    public ResponseEntity<List<ProductLookupResultDTO>> getProducts(
+            @RequestParam(name = "ids", required = false)
+            @Size(max = 1000, message = "At most 1000 ids can be requested at once")
+            List<@Positive(message = "Id must be positive integer") Integer> ids,
+            @RequestParam(name = "codes", required = false)
+            @Size(max = 1000, message = "At most 1000 codes can be requested at once")
+            List<@Pattern(regexp = "[A-Z0-9]{10}", message = "The product code is invalid") String> codes) {
+        List<ProductLookupResultDTO> results = productService.findProducts(Objects.requireNonNullElse(ids, List.of()),
+                Objects.requireNonNullElse(codes, List.of()));
+        List<Product> products = results.stream()
+                .map(ProductLookupResultDTO::getProduct)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        return ResponseEntity.ok().varyBy(HttpHeaders.ACCEPT).eTag(ProductETags.of(products)).body(results);
+    }
+
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportProducts(
+            @RequestParam(name = "format", defaultValue = "ndjson") String format) {
+        ProductExportFormat exportFormat = ProductExportFormat.fromParameterName(format);
+        StreamingResponseBody export = outputStream -> productExportService.exportProducts(exportFormat, outputStream);
+        return ResponseEntity.ok().contentType(exportFormat.getMediaType()).body(export);
+    }
+
+//    Server-Sent Events with every product change after the one whose id is given in Last-Event-ID,
+//    or after the subscription when it is absent
+    @GetMapping(path = "/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamChanges(@RequestHeader(name = "Last-Event-ID", required = false) String lastEventId) {
+        return productChangeFeed.subscribe(lastEventId);
     }
 
     @GetMapping("/{productId}")
-    public ResponseEntity<Product> getProduct(
-            @PathVariable("productId") @Positive(message = "Id must be positive integer") Integer productId) {
-        return new ResponseEntity<>(productService.findProductById(productId), HttpStatus.OK);
+    public ResponseEntity<?> getProduct(
+            @PathVariable("productId") @Positive(message = "Id must be positive integer") Integer productId,
+            @RequestParam(name = "currency", required = false)
+            @Pattern(regexp = "[A-Za-z]{3}", message = "Currency must be a three letter ISO 4217 code") String currency,
+            @RequestParam(name = "fields", required = false) String fields) {
+        Set<ProductField> requestedFields = fields == null ? null : ProductField.fromParameterNames(fields);
+        Product product = productService.findProductById(productId);
+        if (currency == null) {
+            return ResponseEntity.ok().varyBy(HttpHeaders.ACCEPT).eTag(ProductETags.of(product))
+                    .body(representation(product, requestedFields));
+        }
+        ExchangeRate exchangeRate = productService.findExchangeRate(currency);
+        return ResponseEntity.ok().varyBy(HttpHeaders.ACCEPT).eTag(ProductETags.of(product, exchangeRate))
+                .body(productService.convertPrice(product, exchangeRate, requestedFields));
+    }
+
+    @GetMapping("/code/{code}")
+    public ResponseEntity<?> getProductByCode(
+            @PathVariable("code") @Pattern(regexp = "[A-Z0-9]{10}", message = "The product code is invalid") String code,
+            @RequestParam(name = "currency", required = false)
+            @Pattern(regexp = "[A-Za-z]{3}", message = "Currency must be a three letter ISO 4217 code") String currency,
+            @RequestParam(name = "fields", required = false) String fields) {
+        Set<ProductField> requestedFields = fields == null ? null : ProductField.fromParameterNames(fields);
+        Product product = productService.findProductByCode(code);
+        if (currency == null) {
+            return ResponseEntity.ok().varyBy(HttpHeaders.ACCEPT).eTag(ProductETags.of(product))
+                    .body(representation(product, requestedFields));
+        }
+        ExchangeRate exchangeRate = productService.findExchangeRate(currency);
+        return ResponseEntity.ok().varyBy(HttpHeaders.ACCEPT).eTag(ProductETags.of(product, exchangeRate))
+                .body(productService.convertPrice(product, exchangeRate, requestedFields));
     }
 
+//    a retry carrying the Idempotency-Key of an earlier request gets the earlier response
     @PostMapping
-    public ResponseEntity<Product> addProduct(@Valid @RequestBody ProductDTO productDto) {
-        Product createdProduct = productService.createProduct(productDto.toProduct());
-        return new ResponseEntity<>(createdProduct, HttpStatus.CREATED);
+    public ResponseEntity<Product> addProduct(
+            @RequestHeader(name = IdempotencyStore.IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+            @Valid @RequestBody ProductDTO productDto) {
+        if (idempotencyKey == null) {
+            return createProduct(productDto);
+        }
+        return idempotencyStore.execute(idempotencyKey, "POST /api/products", productDto,
+                () -> createProduct(productDto));
+    }
+
+    @PostMapping("/bulk")
+    public ResponseEntity<List<BulkProductResultDTO>> bulkSaveProducts(
+            @RequestHeader(name = IdempotencyStore.IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+            @RequestBody @NotEmpty(message = "At least one product must be provided")
+            @Size(max = 1000, message = "At most 1000 products can be saved at once") List<ProductDTO> productDTOs) {
+        if (idempotencyKey == null) {
+            return new ResponseEntity<>(productService.bulkSaveProducts(productDTOs), HttpStatus.OK);
+        }
+        return idempotencyStore.execute(idempotencyKey, "POST /api/products/bulk", productDTOs,
+                () -> new ResponseEntity<>(productService.bulkSaveProducts(productDTOs), HttpStatus.OK));
+    }
+
+//    the request body is the CSV file itself (Content-Type: text/csv), read while it is being uploaded;
+//    the rows are created or updated by code, the rejected ones are reported with their line numbers
+    @PostMapping(path = "/import", consumes = "text/csv")
+    public ResponseEntity<ProductImportResultDTO> importProducts(InputStream csv) throws IOException {
+        return new ResponseEntity<>(productImportService.importProducts(csv), HttpStatus.OK);
     }
 
     @PutMapping("/{productId}")
     public ResponseEntity<Product> updateWithPut(
             @PathVariable("productId") @Positive(message = "Id must be positive integer") Integer productId,
+            @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch,
             @Valid @RequestBody ProductDTO productDTO) {
-        Product updatedProduct = productService.updateProduct(productId, productDTO);
-        return new ResponseEntity<>(updatedProduct, HttpStatus.OK);
+        Product updatedProduct = productService.updateProduct(productId, productDTO,
+                ProductETags.acceptedVersions(ifMatch, productId));
+        return ResponseEntity.ok().eTag(ProductETags.ofWritten(updatedProduct)).body(updatedProduct);
     }
 
     @PatchMapping(path = "/{productId}", consumes = "application/json-patch+json")
     public ResponseEntity<Product> updateWithPatch(
             @PathVariable("productId") @Positive(message = "Id must be positive integer") Integer productId,
-            @RequestBody JsonPatch productPatch) throws JsonPatchException, JsonProcessingException {
-        Product updatedProduct = productService.patchProduct(productId, productPatch);
-        return new ResponseEntity<>(updatedProduct, HttpStatus.OK);
+            @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @RequestBody List<JsonPatchOperationDTO> productPatch) throws JsonPatchException, JsonProcessingException {
+        Product updatedProduct = productService.patchProduct(productId, productPatch,
+                ProductETags.acceptedVersions(ifMatch, productId));
+        return ResponseEntity.ok().eTag(ProductETags.ofWritten(updatedProduct)).body(updatedProduct);
     }
 
     @DeleteMapping("/{productId}")
     public ResponseEntity<String> delete(
-            @PathVariable("productId") @Positive(message = "Id must be positive integer") Integer productId) {
-        productService.deleteProduct(productId);
+            @PathVariable("productId") @Positive(message = "Id must be positive integer") Integer productId,
+            @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        productService.deleteProduct(productId, ProductETags.acceptedVersions(ifMatch, productId));
         return new ResponseEntity<>(HttpStatus.OK);
     }
 
+//    unconditional, the last write wins; PUT /{productId} with If-Match is the conditional update
+    @PutMapping("/code/{code}")
+    public ResponseEntity<Product> upsertByCode(
+            @PathVariable("code") @Pattern(regexp = "[A-Z0-9]{10}", message = "The product code is invalid") String code,
+            @Valid @RequestBody ProductDTO productDTO) {
+        Product product = productService.upsertProductByCode(code, productDTO);
+        HttpStatus status = product.getVersion() == 0 ? HttpStatus.CREATED : HttpStatus.OK;
+        return ResponseEntity.status(status).eTag(ProductETags.ofWritten(product)).body(product);
+    }
+
+    @DeleteMapping("/code/{code}")
+    public ResponseEntity<String> deleteByCode(
+            @PathVariable("code") @Pattern(regexp = "[A-Z0-9]{10}", message = "The product code is invalid") String code) {
+        productService.deleteProductByCode(code);
+        return new ResponseEntity<>(HttpStatus.OK);
+    }
+
+    private ResponseEntity<Product> createProduct(ProductDTO productDto) {
+        Product createdProduct = productService.createProduct(productDto.toProduct());
+        return new ResponseEntity<>(createdProduct, HttpStatus.CREATED);
+    }
+
+//    the products as they are, or with their prices converted when a currency is requested
+    private ResponseEntity<List<?>> listResponse(List<Product> products, String currency,
+                                                 Set<ProductField> requestedFields) {
+        if (currency == null) {
+            return ResponseEntity.ok().varyBy(HttpHeaders.ACCEPT).eTag(ProductETags.of(products))
+                    .body(representations(products, requestedFields));
+        }
+        ExchangeRate exchangeRate = productService.findExchangeRate(currency);
+        return ResponseEntity.ok().varyBy(HttpHeaders.ACCEPT).eTag(ProductETags.of(products, exchangeRate))
+                .body(productService.convertPrices(products, exchangeRate, requestedFields));
+    }
+
+//    the fields read for a list, null for the whole products; a converted price is calculated from price_hrk
+    private static Set<ProductField> readFields(Set<ProductField> requestedFields, String currency) {
+        if (requestedFields == null || currency == null) {
+            return requestedFields;
+        }
+        Set<ProductField> readFields = EnumSet.copyOf(requestedFields);
+        readFields.add(ProductField.PRICE_HRK);
+        return readFields;
+    }
+
+    private static List<?> representations(List<Product> products, Set<ProductField> requestedFields) {
+        if (requestedFields == null) {
+            return products;
+        }
+        return products.stream()
+                .map(product -> new ProductFieldsDTO(product, requestedFields))
+                .collect(Collectors.toList());
+    }
+
+//    a single product is read whole, usually from the second-level cache, and only written with the requested fields
+    private static Object representation(Product product, Set<ProductField> requestedFields) {
+        return requestedFields == null ? product : new ProductFieldsDTO(product, requestedFields);
+    }
 }
@@ -0,0 +1,88 @@
+package com.dalibormucak.im.springrestapi.controllers;
+
+import com.dalibormucak.im.springrestapi.models.ExchangeRate;
+import com.dalibormucak.im.springrestapi.models.Product;
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+//    entity tags derived from the product id and its optimistic locking version,
+//    so they can be computed and compared without serializing the response;
+//    read responses get weak tags: the same version is served as JSON, Smile or CBOR (Vary: Accept), while
+//    a strong tag would have to differ for each of them, and Tomcat does not compress responses with strong tags;
+//    the response of a write gets a strong tag; If-Match is compared on the version of the product,
+//    so the weak tag of a read is accepted there as well
+final class ProductETags {
+
+    private static final String WEAK_PREFIX = "W/";
+
+    private static final String ANY = "*";
+
+    private ProductETags() {
+    }
+
+    static String of(Product product) {
+        return WEAK_PREFIX + ofWritten(product);
+    }
+
+    static String ofWritten(Product product) {
+        return '"' + versionTag(product) + '"';
+    }
+
+    static String of(List<Product> products) {
+        return WEAK_PREFIX + '"' + digest(products, new StringBuilder()) + '"';
+    }
+
+//    converted prices change with the exchange rate even when the products do not
+    static String of(Product product, ExchangeRate exchangeRate) {
+        return of(List.of(product), exchangeRate);
+    }
+
+    static String of(List<Product> products, ExchangeRate exchangeRate) {
+        StringBuilder rateTag = new StringBuilder()
+                .append(exchangeRate.getCurrency()).append(':')
+                .append(exchangeRate.getMediumRate().toPlainString()).append(':')
+                .append(exchangeRate.getUnit()).append(';');
+        return WEAK_PREFIX + '"' + digest(products, rateTag) + '"';
+    }
+
+//    returns the product versions listed in the If-Match header,
+//    or null when the header is absent or matches any version
+    static List<Long> acceptedVersions(String ifMatch, Integer productId) {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals(ANY)) {
+            return null;
+        }
+        List<Long> versions = new ArrayList<>();
+        String idPrefix = productId + ".";
+        for (String eTag : ifMatch.split(",")) {
+            String tag = eTag.trim();
+            if (tag.startsWith(WEAK_PREFIX)) {
+                tag = tag.substring(WEAK_PREFIX.length());
+            }
+            if (tag.length() < 2 || !tag.startsWith("\"") || !tag.endsWith("\"")) {
+                continue;
+            }
+            String versionTag = tag.substring(1, tag.length() - 1);
+            if (versionTag.startsWith(idPrefix)) {
+                try {
+                    versions.add(Long.valueOf(versionTag.substring(idPrefix.length())));
+                } catch (NumberFormatException ex) {
+                    // not an entity tag issued for this product, it can never match
+                }
+            }
+        }
+        return versions;
+    }
+
+    private static String digest(List<Product> products, StringBuilder versionTags) {
+        products.forEach(product -> versionTags.append(versionTag(product)).append(';'));
+        return DigestUtils.md5DigestAsHex(versionTags.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String versionTag(Product product) {
+        return product.getId() + "." + Objects.requireNonNullElse(product.getVersion(), 0L);
+    }
+}
@@ -0,0 +1,83 @@
+package com.dalibormucak.im.springrestapi.controllers;
+
+import com.dalibormucak.im.springrestapi.models.Product;
+import com.dalibormucak.im.springrestapi.models.dtos.JsonPatchOperationDTO;
+import com.dalibormucak.im.springrestapi.models.dtos.ProductDTO;
+import com.dalibormucak.im.springrestapi.services.ReactiveProductService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Positive;
+import java.util.List;
+
+//    /api/products contract of ProductController served by WebFlux and R2DBC when the reactive profile is active
+@RestController
+@Validated
+@Profile("reactive")
+@RequestMapping("/api/products")
+public class ReactiveProductController {
+
+    private final ReactiveProductService productService;
+
+    @Autowired
+    public ReactiveProductController(ReactiveProductService productService) {
+        this.productService = productService;
+    }
+
+    @GetMapping
+    public Mono<ResponseEntity<List<Product>>> getAllProducts() {
+        return productService.findAllProducts()
+                .collectList()
+                .map(products -> ResponseEntity.ok().varyBy(HttpHeaders.ACCEPT).eTag(ProductETags.of(products))
+                        .body(products));
+    }
+
+    @GetMapping("/{productId}")
+    public Mono<ResponseEntity<Product>> getProduct(
+            @PathVariable("productId") @Positive(message = "Id must be positive integer") Integer productId) {
+        return productService.findProductById(productId)
+                .map(product -> ResponseEntity.ok().varyBy(HttpHeaders.ACCEPT).eTag(ProductETags.of(product))
+                        .body(product));
+    }
+
+    @PostMapping
+    public Mono<ResponseEntity<Product>> addProduct(@Valid @RequestBody ProductDTO productDto) {
+        return productService.createProduct(productDto.toProduct())
+                .map(createdProduct -> new ResponseEntity<>(createdProduct, HttpStatus.CREATED));
+    }
+
+    @PutMapping("/{productId}")
+    public Mono<ResponseEntity<Product>> updateWithPut(
+            @PathVariable("productId") @Positive(message = "Id must be positive integer") Integer productId,
+            @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @Valid @RequestBody ProductDTO productDTO) {
+        return productService.updateProduct(productId, productDTO, ProductETags.acceptedVersions(ifMatch, productId))
+                .map(updatedProduct -> ResponseEntity.ok().eTag(ProductETags.ofWritten(updatedProduct))
+                        .body(updatedProduct));
+    }
+
+    @PatchMapping(path = "/{productId}", consumes = "application/json-patch+json")
+    public Mono<ResponseEntity<Product>> updateWithPatch(
+            @PathVariable("productId") @Positive(message = "Id must be positive integer") Integer productId,
+            @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @RequestBody List<JsonPatchOperationDTO> productPatch) {
+        return productService.patchProduct(productId, productPatch, ProductETags.acceptedVersions(ifMatch, productId))
+                .map(updatedProduct -> ResponseEntity.ok().eTag(ProductETags.ofWritten(updatedProduct))
+                        .body(updatedProduct));
+    }
+
+    @DeleteMapping("/{productId}")
+    public Mono<ResponseEntity<String>> delete(
+            @PathVariable("productId") @Positive(message = "Id must be positive integer") Integer productId,
+            @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        return productService.deleteProduct(productId, ProductETags.acceptedVersions(ifMatch, productId))
+                .then(Mono.just(new ResponseEntity<>(HttpStatus.OK)));
+    }
+}
@@ -0,0 +1,13 @@
+package com.dalibormucak.im.springrestapi.exceptions;
+
+//    a request the client has to correct, its message is returned to the client
+public class BadRequestException extends RuntimeException {
+
+    public BadRequestException(String message) {
+        super(message);
+    }
+
+    public BadRequestException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,11 @@
+package com.dalibormucak.im.springrestapi.exceptions;
+
+import org.springframework.dao.OptimisticLockingFailureException;
+
+//    a write kept losing to concurrent writes of the same product; answered with 409 like a failed optimistic lock
+public class ConcurrentProductWriteException extends OptimisticLockingFailureException {
+
+    public ConcurrentProductWriteException(String message) {
+        super(message);
+    }
+}
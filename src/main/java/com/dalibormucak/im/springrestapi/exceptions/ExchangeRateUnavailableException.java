@@ -0,0 +1,12 @@
+package com.dalibormucak.im.springrestapi.exceptions;
+
+public class ExchangeRateUnavailableException extends RuntimeException {
+
+    public ExchangeRateUnavailableException(String message) {
+        super(message);
+    }
+
+    public ExchangeRateUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -2,13 +2,17 @@ package com.dalibormucak.im.springrestapi.exceptions;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.github.fge.jsonpatch.JsonPatchException;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.postgresql.util.PSQLException;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.support.DefaultMessageSourceResolvable;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.support.WebExchangeBindException;
 
 import javax.validation.ConstraintViolationException;
 import java.util.*;
@@ -19,9 +23,20 @@ public class GlobalExceptionHandler {
 
     private static final String DEFAULT_DB_ERROR_MSG = "Database error";
     private static final String DEFAULT_JSON_ERROR_MSG = "JSON processing error";
+    private static final String DEFAULT_EXCHANGE_RATE_ERROR_MSG = "Exchange rate is currently not available";
+    private static final String DEFAULT_CONCURRENT_MODIFICATION_MSG = "The product has been modified concurrently";
+    private static final String ERRORS_METRIC = "product.api.errors";
+
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public GlobalExceptionHandler(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
 
     @ExceptionHandler(MethodArgumentNotValidException.class)
     protected ResponseEntity<Object> handleMethodArgumentNotValid(MethodArgumentNotValidException ex) {
+        countError("handleMethodArgumentNotValid", HttpStatus.BAD_REQUEST);
         Map<String, List<String>> body = new HashMap<>();
         List<String> errors = ex.getBindingResult()
                 .getFieldErrors()
@@ -32,8 +47,22 @@ public class GlobalExceptionHandler {
         return new ResponseEntity<>(body, HttpStatus.BAD_REQUEST);
     }
 
+//    request body validation errors of the reactive profile
+    @ExceptionHandler(WebExchangeBindException.class)
+    protected ResponseEntity<Object> handleWebExchangeBind(WebExchangeBindException ex) {
+        countError("handleWebExchangeBind", HttpStatus.BAD_REQUEST);
+        Map<String, List<String>> body = new HashMap<>();
+        List<String> errors = ex.getFieldErrors()
+                .stream()
+                .map(DefaultMessageSourceResolvable::getDefaultMessage)
+                .collect(Collectors.toList());
+        body.put("errors", errors);
+        return new ResponseEntity<>(body, HttpStatus.BAD_REQUEST);
+    }
+
     @ExceptionHandler(NoSuchElementException.class)
     protected ResponseEntity<?> noSuchElementException(NoSuchElementException ex) {
+        countError("noSuchElementException", HttpStatus.NOT_FOUND);
         Map<String, List<String>> body = new HashMap<>();
         List<String> errors = new ArrayList<>();
         errors.add(ex.getMessage());
@@ -43,6 +72,7 @@ public class GlobalExceptionHandler {
 
     @ExceptionHandler({JsonPatchException.class, JsonProcessingException.class})
     protected ResponseEntity<?> jsonExceptions(Exception ex) {
+        countError("jsonExceptions", HttpStatus.INTERNAL_SERVER_ERROR);
         Map<String, List<String>> body = new HashMap<>();
         List<String> errors = new ArrayList<>();
         errors.add(DEFAULT_JSON_ERROR_MSG);
@@ -52,6 +82,7 @@ public class GlobalExceptionHandler {
 
     @ExceptionHandler(PSQLException.class)
     protected ResponseEntity<?> databaseException(PSQLException ex) {
+        countError("databaseException", HttpStatus.INTERNAL_SERVER_ERROR);
         Map<String, List<String>> body = new HashMap<>();
         List<String> errors = new ArrayList<>();
         errors.add(DEFAULT_DB_ERROR_MSG);
@@ -59,13 +90,78 @@ public class GlobalExceptionHandler {
         return new ResponseEntity<>(body, HttpStatus.INTERNAL_SERVER_ERROR);
     }
 
+    @ExceptionHandler(ExchangeRateUnavailableException.class)
+    protected ResponseEntity<?> exchangeRateUnavailableException(ExchangeRateUnavailableException ex) {
+        countError("exchangeRateUnavailableException", HttpStatus.SERVICE_UNAVAILABLE);
+        Map<String, List<String>> body = new HashMap<>();
+        List<String> errors = new ArrayList<>();
+        errors.add(DEFAULT_EXCHANGE_RATE_ERROR_MSG);
+        body.put("errors", errors);
+        return new ResponseEntity<>(body, HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    @ExceptionHandler(PreconditionFailedException.class)
+    protected ResponseEntity<?> preconditionFailedException(PreconditionFailedException ex) {
+        countError("preconditionFailedException", HttpStatus.PRECONDITION_FAILED);
+        Map<String, List<String>> body = new HashMap<>();
+        List<String> errors = new ArrayList<>();
+        errors.add(ex.getMessage());
+        body.put("errors", errors);
+        return new ResponseEntity<>(body, HttpStatus.PRECONDITION_FAILED);
+    }
+
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    protected ResponseEntity<?> optimisticLockingFailureException(OptimisticLockingFailureException ex) {
+        countError("optimisticLockingFailureException", HttpStatus.CONFLICT);
+        Map<String, List<String>> body = new HashMap<>();
+        List<String> errors = new ArrayList<>();
+        errors.add(DEFAULT_CONCURRENT_MODIFICATION_MSG);
+        body.put("errors", errors);
+        return new ResponseEntity<>(body, HttpStatus.CONFLICT);
+    }
+
+    @ExceptionHandler(IdempotentRequestInProgressException.class)
+    protected ResponseEntity<?> idempotentRequestInProgressException(IdempotentRequestInProgressException ex) {
+        countError("idempotentRequestInProgressException", HttpStatus.CONFLICT);
+        Map<String, List<String>> body = new HashMap<>();
+        List<String> errors = new ArrayList<>();
+        errors.add(ex.getMessage());
+        body.put("errors", errors);
+        return new ResponseEntity<>(body, HttpStatus.CONFLICT);
+    }
+
+    @ExceptionHandler(IdempotencyKeyReusedException.class)
+    protected ResponseEntity<?> idempotencyKeyReusedException(IdempotencyKeyReusedException ex) {
+        countError("idempotencyKeyReusedException", HttpStatus.UNPROCESSABLE_ENTITY);
+        Map<String, List<String>> body = new HashMap<>();
+        List<String> errors = new ArrayList<>();
+        errors.add(ex.getMessage());
+        body.put("errors", errors);
+        return new ResponseEntity<>(body, HttpStatus.UNPROCESSABLE_ENTITY);
+    }
+
+    @ExceptionHandler(BadRequestException.class)
+    protected ResponseEntity<?> badRequestException(BadRequestException ex) {
+        countError("badRequestException", HttpStatus.BAD_REQUEST);
+        Map<String, List<String>> body = new HashMap<>();
+        List<String> errors = new ArrayList<>();
+        errors.add(ex.getMessage());
+        body.put("errors", errors);
+        return new ResponseEntity<>(body, HttpStatus.BAD_REQUEST);
+    }
+
     @ExceptionHandler(ConstraintViolationException.class)
     protected ResponseEntity<?> constraintViolationException(ConstraintViolationException ex) {
+        countError("constraintViolationException", HttpStatus.BAD_REQUEST);
         Map<String, List<String>> body = new HashMap<>();
         List<String> errors = new ArrayList<>();
         ex.getConstraintViolations().forEach(cv -> errors.add(cv.getMessage()));
         body.put("errors", errors);
         return new ResponseEntity<>(body, HttpStatus.BAD_REQUEST);
     }
-}
 
+//    one counter per handler, tagged with the handler name and the response status
+    private void countError(String handler, HttpStatus status) {
+        meterRegistry.counter(ERRORS_METRIC, "handler", handler, "status", String.valueOf(status.value())).increment();
+    }
+}
@@ -0,0 +1,8 @@
+package com.dalibormucak.im.springrestapi.exceptions;
+
+public class IdempotencyKeyReusedException extends RuntimeException {
+
+    public IdempotencyKeyReusedException(String message) {
+        super(message);
+    }
+}
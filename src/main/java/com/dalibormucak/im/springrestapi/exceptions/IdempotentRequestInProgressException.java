@@ -0,0 +1,8 @@
+package com.dalibormucak.im.springrestapi.exceptions;
+
+public class IdempotentRequestInProgressException extends RuntimeException {
+
+    public IdempotentRequestInProgressException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,8 @@
+package com.dalibormucak.im.springrestapi.exceptions;
+
+public class PreconditionFailedException extends RuntimeException {
+
+    public PreconditionFailedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,24 @@
+package com.dalibormucak.im.springrestapi.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+
+//    HNB medium rate in kuna for the given number of currency units (e.g. 100 JPY)
+@Getter
+@AllArgsConstructor
+public class ExchangeRate {
+
+    private final String currency;
+
+    private final LocalDate applicationDate;
+
+    private final int unit;
+
+    private final BigDecimal mediumRate;
+
+    private final Instant fetchedAt;
+}
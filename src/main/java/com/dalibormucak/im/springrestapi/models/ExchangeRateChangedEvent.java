@@ -0,0 +1,13 @@
+package com.dalibormucak.im.springrestapi.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+//    published by the ExchangeRateProvider when a fetched medium rate differs from the cached one,
+//    including the first rate fetched for a currency
+@Getter
+@AllArgsConstructor
+public class ExchangeRateChangedEvent {
+
+    private final ExchangeRate exchangeRate;
+}
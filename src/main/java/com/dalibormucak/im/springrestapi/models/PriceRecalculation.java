@@ -0,0 +1,51 @@
+package com.dalibormucak.im.springrestapi.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.math.BigDecimal;
+import java.time.Instant;
+
+//    progress of the recalculation of the prices in a currency with an exchange rate,
+//    products are processed in id order so the job can resume after the last processed product id
+@Entity
+@Table(name = "price_recalculation")
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class PriceRecalculation {
+
+    @Id
+    @Column(name = "currency", length = 3)
+    private String currency;
+
+    @Column(name = "exchange_rate", precision = 12, scale = 6, nullable = false)
+    private BigDecimal exchange_rate;
+
+    @Column(name = "last_product_id", nullable = false)
+    private Integer last_product_id;
+
+    @Column(name = "updated_products", nullable = false)
+    private Long updated_products;
+
+    @Column(name = "started_at", nullable = false)
+    private Instant started_at;
+
+    @Column(name = "finished_at")
+    private Instant finished_at;
+
+    public static PriceRecalculation start(String currency, BigDecimal exchangeRate, Instant now) {
+        return new PriceRecalculation(currency, exchangeRate, 0, 0L, now, null);
+    }
+
+    public boolean isFinished() {
+        return finished_at != null;
+    }
+}
@@ -1,26 +1,41 @@
 package com.dalibormucak.im.springrestapi.models;
 
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
 
 import javax.persistence.*;
 import java.math.BigDecimal;
 
 @Entity
 @Table(name = "product")
-@Builder
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "product")
+@NaturalIdCache(region = "product-code")
+//    updates found by dirty checking only write the changed columns (and the version)
+@DynamicUpdate
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 @Getter
 @Setter
 public class Product {
 
+//    the Spring Data id maps the same table for the R2DBC repository of the reactive profile
     @Id
+    @org.springframework.data.annotation.Id
     @Column(name = "id")
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "product_id_generator")
+    @SequenceGenerator(name = "product_id_generator", sequenceName = "product_id_seq", allocationSize = 50)
     @Setter(AccessLevel.PROTECTED)
     private Integer id;
 
+    @NaturalId(mutable = true)
     @Column(name = "code", columnDefinition = "VARCHAR(10) UNIQUE CHECK (CHAR_LENGTH(code) = 10)")
     private String code;
 
@@ -38,4 +53,10 @@ public class Product {
 
     @Column(name = "is_available", nullable = false)
     private Boolean is_available;
+
+    @Version
+    @Column(name = "version", nullable = false, columnDefinition = "BIGINT NOT NULL DEFAULT 0")
+    @Setter(AccessLevel.PROTECTED)
+    @JsonIgnore
+    private Long version;
 }
@@ -0,0 +1,85 @@
+package com.dalibormucak.im.springrestapi.models;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonRawValue;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.hibernate.annotations.ColumnTransformer;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import java.time.Instant;
+
+//    outbox row written in the transaction that changes the product; tx_id is the id of that transaction,
+//    rows are published in (tx_id, id) order once every transaction with a lower id has finished,
+//    so a row committed late can never be skipped by a consumer that has already seen later rows
+@Entity
+@Table(name = "product_change")
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ProductChange {
+
+    public enum Type {
+        @JsonProperty("created") CREATED,
+        @JsonProperty("updated") UPDATED,
+        @JsonProperty("deleted") DELETED
+    }
+
+    @Id
+    @Column(name = "id")
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "product_change_id_generator")
+    @SequenceGenerator(name = "product_change_id_generator", sequenceName = "product_change_id_seq",
+            allocationSize = 50)
+    @Setter(AccessLevel.PROTECTED)
+    @JsonIgnore
+    private Long id;
+
+    @Column(name = "tx_id", insertable = false, updatable = false,
+            columnDefinition = "xid8 NOT NULL DEFAULT pg_current_xact_id()")
+    @Setter(AccessLevel.PROTECTED)
+    @JsonIgnore
+    private Long tx_id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "type", length = 7, nullable = false)
+    @JsonProperty("type")
+    private Type type;
+
+    @Column(name = "product_id", nullable = false)
+    @JsonProperty("product_id")
+    private Integer product_id;
+
+    @Column(name = "product_version")
+    @JsonProperty("version")
+    private Long product_version;
+
+//    the product as it was serialized after the change, absent for deletions
+    @Column(name = "product", columnDefinition = "jsonb")
+    @ColumnTransformer(write = "CAST(? AS jsonb)")
+    @JsonProperty("product")
+    @JsonRawValue
+    private String product;
+
+    @Column(name = "changed_at", nullable = false)
+    @JsonProperty("changed_at")
+    private Instant changed_at;
+
+    public static ProductChange of(Type type, Integer productId, Long productVersion, String product) {
+        return new ProductChange(null, null, type, productId, productVersion, product, Instant.now());
+    }
+}
@@ -0,0 +1,48 @@
+package com.dalibormucak.im.springrestapi.models;
+
+import com.dalibormucak.im.springrestapi.exceptions.BadRequestException;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+//    position in the change feed, sent as the id of every event and accepted back in Last-Event-ID
+@Getter
+@EqualsAndHashCode
+public class ProductChangeCursor {
+
+    public static final ProductChangeCursor START = new ProductChangeCursor(0L, 0L);
+
+    private static final String INVALID_CURSOR_MSG = "The Last-Event-ID is invalid";
+
+    private final long txId;
+
+    private final long id;
+
+    public ProductChangeCursor(long txId, long id) {
+        this.txId = txId;
+        this.id = id;
+    }
+
+    public static ProductChangeCursor after(ProductChange change) {
+        return new ProductChangeCursor(change.getTx_id(), change.getId());
+    }
+
+    public String encode() {
+        return txId + "-" + id;
+    }
+
+    public static ProductChangeCursor decode(String lastEventId) {
+        String[] parts = lastEventId.trim().split("-", 2);
+        try {
+            if (parts.length != 2) {
+                throw new BadRequestException(INVALID_CURSOR_MSG);
+            }
+            ProductChangeCursor cursor = new ProductChangeCursor(Long.parseLong(parts[0]), Long.parseLong(parts[1]));
+            if (cursor.txId < 0 || cursor.id < 0) {
+                throw new BadRequestException(INVALID_CURSOR_MSG);
+            }
+            return cursor;
+        } catch (IllegalArgumentException ex) {
+            throw new BadRequestException(INVALID_CURSOR_MSG, ex);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.dalibormucak.im.springrestapi.models;
+
+import com.dalibormucak.im.springrestapi.exceptions.BadRequestException;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.data.domain.Sort;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+//    opaque keyset position: the sort value and id of the last product of the previous page,
+//    bound to the sort it was issued for; the sort value is left out when the product has none
+@Getter
+@AllArgsConstructor
+public class ProductCursor {
+
+    private static final String INVALID_CURSOR_MSG = "The cursor is invalid";
+
+    private final ProductSortField sortField;
+
+    private final Sort.Direction direction;
+
+    private final Comparable<?> sortValue;
+
+    private final Integer id;
+
+    public static ProductCursor after(Product product, ProductSortField sortField, Sort.Direction direction) {
+        return new ProductCursor(sortField, direction, sortField.valueOf(product), product.getId());
+    }
+
+    public String encode() {
+        String token = sortField.getParameterName() + ":" + direction + ":" + id
+                + (sortValue == null ? "" : ":" + sortValue);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static ProductCursor decode(String cursor, ProductSortField sortField, Sort.Direction direction) {
+        try {
+            String token = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = token.split(":", 4);
+            if (parts.length < 3 || !parts[0].equals(sortField.getParameterName())
+                    || !parts[1].equals(direction.name()) || (parts.length == 3 && !sortField.isNullable())) {
+                throw new BadRequestException(INVALID_CURSOR_MSG);
+            }
+            Comparable<?> sortValue = parts.length == 3 ? null : sortField.parseValue(parts[3]);
+            return new ProductCursor(sortField, direction, sortValue, Integer.valueOf(parts[2]));
+        } catch (IllegalArgumentException ex) {
+            throw new BadRequestException(INVALID_CURSOR_MSG, ex);
+        }
+    }
+}
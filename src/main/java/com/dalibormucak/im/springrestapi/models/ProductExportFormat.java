@@ -0,0 +1,31 @@
+package com.dalibormucak.im.springrestapi.models;
+
+import com.dalibormucak.im.springrestapi.exceptions.BadRequestException;
+import org.springframework.http.MediaType;
+
+import java.util.Arrays;
+
+public enum ProductExportFormat {
+
+    NDJSON("ndjson", MediaType.parseMediaType("application/x-ndjson")),
+    CSV("csv", MediaType.parseMediaType("text/csv;charset=UTF-8"));
+
+    private final String parameterName;
+    private final MediaType mediaType;
+
+    ProductExportFormat(String parameterName, MediaType mediaType) {
+        this.parameterName = parameterName;
+        this.mediaType = mediaType;
+    }
+
+    public MediaType getMediaType() {
+        return mediaType;
+    }
+
+    public static ProductExportFormat fromParameterName(String parameterName) {
+        return Arrays.stream(values())
+                .filter(format -> format.parameterName.equals(parameterName))
+                .findFirst()
+                .orElseThrow(() -> new BadRequestException("Products cannot be exported as " + parameterName));
+    }
+}
@@ -0,0 +1,68 @@
+package com.dalibormucak.im.springrestapi.models;
+
+import com.dalibormucak.im.springrestapi.exceptions.BadRequestException;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+//    product attributes that can be requested with the fields parameter, in the order of the full representation;
+//    a product read with only some of them has the others left null
+public enum ProductField {
+
+    ID("id", Product::getId, (builder, value) -> builder.id((Integer) value)),
+    CODE("code", Product::getCode, (builder, value) -> builder.code((String) value)),
+    NAME("name", Product::getName, (builder, value) -> builder.name((String) value)),
+    PRICE_HRK("price_hrk", Product::getPrice_hrk, (builder, value) -> builder.price_hrk((BigDecimal) value)),
+    PRICE_EUR("price_eur", Product::getPrice_eur, (builder, value) -> builder.price_eur((BigDecimal) value)),
+    DESCRIPTION("description", Product::getDescription, (builder, value) -> builder.description((String) value)),
+    IS_AVAILABLE("is_available", Product::getIs_available,
+            (builder, value) -> builder.is_available((Boolean) value));
+
+    private final String parameterName;
+    private final Function<Product, Object> accessor;
+    private final BiConsumer<Product.ProductBuilder, Object> mutator;
+
+    ProductField(String parameterName, Function<Product, Object> accessor,
+                 BiConsumer<Product.ProductBuilder, Object> mutator) {
+        this.parameterName = parameterName;
+        this.accessor = accessor;
+        this.mutator = mutator;
+    }
+
+//    also the name of the entity attribute and of the column
+    public String getParameterName() {
+        return parameterName;
+    }
+
+    public Object valueOf(Product product) {
+        return accessor.apply(product);
+    }
+
+    public void set(Product.ProductBuilder builder, Object value) {
+        mutator.accept(builder, value);
+    }
+
+    public static ProductField fromParameterName(String parameterName) {
+        return Arrays.stream(values())
+                .filter(field -> field.parameterName.equals(parameterName))
+                .findFirst()
+                .orElseThrow(() -> new BadRequestException("Products have no field " + parameterName));
+    }
+
+//    e.g. id,code,price_eur; the order and repetitions do not matter
+    public static Set<ProductField> fromParameterNames(String parameterNames) {
+        Set<ProductField> fields = EnumSet.noneOf(ProductField.class);
+        for (String parameterName : parameterNames.split(",")) {
+            if (!parameterName.isBlank()) {
+                fields.add(fromParameterName(parameterName.trim()));
+            }
+        }
+        if (fields.isEmpty()) {
+            throw new BadRequestException("At least one field must be requested");
+        }
+        return fields;
+    }
+}
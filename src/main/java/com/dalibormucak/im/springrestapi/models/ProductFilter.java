@@ -0,0 +1,17 @@
+package com.dalibormucak.im.springrestapi.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+
+@Getter
+@AllArgsConstructor
+public class ProductFilter {
+
+    private final Boolean isAvailable;
+
+    private final BigDecimal minPriceHrk;
+
+    private final BigDecimal maxPriceHrk;
+}
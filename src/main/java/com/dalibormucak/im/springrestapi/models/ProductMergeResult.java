@@ -0,0 +1,19 @@
+package com.dalibormucak.im.springrestapi.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+//    outcome of merging the staged rows of an import into the catalogue; the rows repeating a code
+//    of an earlier row are not merged
+@Getter
+@AllArgsConstructor
+public class ProductMergeResult {
+
+    private final long created;
+
+    private final long updated;
+
+    private final List<Long> duplicateLines;
+}
@@ -0,0 +1,58 @@
+package com.dalibormucak.im.springrestapi.models;
+
+import com.dalibormucak.im.springrestapi.exceptions.BadRequestException;
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+//    sortable product attributes; products without a value of a nullable attribute are sorted
+//    by id after the others in ascending and before them in descending order
+public enum ProductSortField {
+
+    ID(ProductField.ID, false),
+    CODE(ProductField.CODE, true),
+    NAME(ProductField.NAME, true),
+    PRICE_HRK(ProductField.PRICE_HRK, true);
+
+    private final ProductField field;
+    private final boolean nullable;
+
+    ProductSortField(ProductField field, boolean nullable) {
+        this.field = field;
+        this.nullable = nullable;
+    }
+
+    public String getParameterName() {
+        return field.getParameterName();
+    }
+
+    public String getAttributeName() {
+        return field.getParameterName();
+    }
+
+//    a page read with only some fields also reads this one to issue its cursor
+    public ProductField getField() {
+        return field;
+    }
+
+    public boolean isNullable() {
+        return nullable;
+    }
+
+    public Comparable<?> valueOf(Product product) {
+        return (Comparable<?>) field.valueOf(product);
+    }
+
+    public Comparable<?> parseValue(String value) {
+        if (this == ID) {
+            return Integer.valueOf(value);
+        }
+        return this == PRICE_HRK ? new BigDecimal(value) : value;
+    }
+
+    public static ProductSortField fromParameterName(String parameterName) {
+        return Arrays.stream(values())
+                .filter(sortField -> sortField.getParameterName().equals(parameterName))
+                .findFirst()
+                .orElseThrow(() -> new BadRequestException("Products cannot be sorted by " + parameterName));
+    }
+}
@@ -0,0 +1,41 @@
+package com.dalibormucak.im.springrestapi.models.dtos;
+
+import com.dalibormucak.im.springrestapi.models.Product;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+@Getter
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BulkProductResultDTO {
+
+    public enum Status {
+        @JsonProperty("created") CREATED,
+        @JsonProperty("updated") UPDATED,
+        @JsonProperty("rejected") REJECTED
+    }
+
+    @JsonProperty("index")
+    private final int index;
+
+    @JsonProperty("status")
+    private final Status status;
+
+    @JsonProperty("product")
+    private final Product product;
+
+    @JsonProperty("errors")
+    private final List<String> errors;
+
+    public static BulkProductResultDTO saved(int index, Status status, Product product) {
+        return new BulkProductResultDTO(index, status, product, null);
+    }
+
+    public static BulkProductResultDTO rejected(int index, List<String> errors) {
+        return new BulkProductResultDTO(index, Status.REJECTED, null, errors);
+    }
+}
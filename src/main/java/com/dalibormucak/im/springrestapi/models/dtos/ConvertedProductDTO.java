@@ -0,0 +1,24 @@
+package com.dalibormucak.im.springrestapi.models.dtos;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+
+//    product, or its requested fields, with its price converted to the requested currency,
+//    the stored prices are kept as they are
+@Getter
+@AllArgsConstructor
+public class ConvertedProductDTO<T> {
+
+    @JsonUnwrapped
+    private final T product;
+
+    @JsonProperty("currency")
+    private final String currency;
+
+    @JsonProperty("price")
+    private final BigDecimal price;
+}
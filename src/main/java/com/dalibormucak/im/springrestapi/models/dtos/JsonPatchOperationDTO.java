@@ -0,0 +1,30 @@
+package com.dalibormucak.im.springrestapi.models.dtos;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+//    single RFC 6902 operation, an explicit "value": null is kept as a NullNode
+//    so it can be told apart from a missing value
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class JsonPatchOperationDTO {
+    @JsonProperty("op")
+    private String op;
+
+    @JsonProperty("path")
+    private String path;
+
+    @JsonProperty("from")
+    private String from;
+
+    @JsonProperty("value")
+    private JsonNode value;
+}
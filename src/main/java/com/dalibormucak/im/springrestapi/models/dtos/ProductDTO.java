@@ -8,6 +8,7 @@ import lombok.NoArgsConstructor;
 import lombok.Setter;
 import org.hibernate.validator.constraints.Length;
 
+import javax.validation.constraints.DecimalMax;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Pattern;
 import javax.validation.constraints.Positive;
@@ -28,7 +29,9 @@ public class ProductDTO {
     private String name;
 
     @JsonProperty("price_hrk")
+    @NotNull(message = "The product price must be defined")
     @Positive(message = "The product price must be positive")
+    @DecimalMax(value = "9999999999.99", message = "The product price cannot exceed 9999999999.99")
     private BigDecimal price_hrk;
 
     @JsonProperty("description")
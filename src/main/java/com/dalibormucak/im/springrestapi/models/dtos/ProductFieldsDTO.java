@@ -0,0 +1,28 @@
+package com.dalibormucak.im.springrestapi.models.dtos;
+
+import com.dalibormucak.im.springrestapi.models.Product;
+import com.dalibormucak.im.springrestapi.models.ProductField;
+import com.fasterxml.jackson.annotation.JsonAnyGetter;
+import lombok.AllArgsConstructor;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+//    only the requested fields of a product, a requested field without a value is written as null like in the product
+@AllArgsConstructor
+public class ProductFieldsDTO {
+
+    private final Product product;
+
+    private final Set<ProductField> fields;
+
+    @JsonAnyGetter
+    public Map<String, Object> getValues() {
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (ProductField field : fields) {
+            values.put(field.getParameterName(), field.valueOf(product));
+        }
+        return values;
+    }
+}
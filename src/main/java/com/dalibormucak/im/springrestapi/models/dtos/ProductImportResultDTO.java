@@ -0,0 +1,42 @@
+package com.dalibormucak.im.springrestapi.models.dtos;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+//    counts of an import and the errors of its rejected rows, at most the first product-import.max-reported-errors
+@Getter
+@AllArgsConstructor
+public class ProductImportResultDTO {
+
+    @JsonProperty("rows")
+    private final long rows;
+
+    @JsonProperty("created")
+    private final long created;
+
+    @JsonProperty("updated")
+    private final long updated;
+
+    @JsonProperty("unchanged")
+    private final long unchanged;
+
+    @JsonProperty("rejected")
+    private final long rejected;
+
+    @JsonProperty("errors")
+    private final List<RejectedRow> errors;
+
+    @Getter
+    @AllArgsConstructor
+    public static class RejectedRow {
+
+        @JsonProperty("line")
+        private final long line;
+
+        @JsonProperty("errors")
+        private final List<String> errors;
+    }
+}
@@ -0,0 +1,52 @@
+package com.dalibormucak.im.springrestapi.models.dtos;
+
+import com.dalibormucak.im.springrestapi.models.Product;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+//    result for one of the requested ids or codes, the requested key is repeated so missing products can be told apart
+@Getter
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ProductLookupResultDTO {
+
+    public enum Status {
+        @JsonProperty("found") FOUND,
+        @JsonProperty("not_found") NOT_FOUND
+    }
+
+    @JsonProperty("id")
+    private final Integer id;
+
+    @JsonProperty("code")
+    private final String code;
+
+    @JsonProperty("status")
+    private final Status status;
+
+    @JsonProperty("product")
+    private final Product product;
+
+    @JsonProperty("errors")
+    private final List<String> errors;
+
+    public static ProductLookupResultDTO byId(Integer id, Product product) {
+        if (product == null) {
+            return new ProductLookupResultDTO(id, null, Status.NOT_FOUND, null,
+                    List.of("Product with id " + id + " does not exist"));
+        }
+        return new ProductLookupResultDTO(id, null, Status.FOUND, product, null);
+    }
+
+    public static ProductLookupResultDTO byCode(String code, Product product) {
+        if (product == null) {
+            return new ProductLookupResultDTO(null, code, Status.NOT_FOUND, null,
+                    List.of("Product with code " + code + " does not exist"));
+        }
+        return new ProductLookupResultDTO(null, code, Status.FOUND, product, null);
+    }
+}
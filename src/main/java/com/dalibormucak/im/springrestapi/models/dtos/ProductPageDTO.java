@@ -0,0 +1,18 @@
+package com.dalibormucak.im.springrestapi.models.dtos;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+@Getter
+@AllArgsConstructor
+public class ProductPageDTO<T> {
+
+    @JsonProperty("products")
+    private final List<T> products;
+
+    @JsonProperty("next_cursor")
+    private final String nextCursor;
+}
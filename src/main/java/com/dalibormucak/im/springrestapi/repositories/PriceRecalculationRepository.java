@@ -0,0 +1,18 @@
+package com.dalibormucak.im.springrestapi.repositories;
+
+import com.dalibormucak.im.springrestapi.models.PriceRecalculation;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Optional;
+
+@Repository
+public interface PriceRecalculationRepository extends JpaRepository<PriceRecalculation, String> {
+
+//    not read-only so that it is read on the primary, a recalculation resumed from a lagging replica would start
+//    over and overwrite the progress stored on the primary
+    @Override
+    @Transactional
+    Optional<PriceRecalculation> findById(String currency);
+}
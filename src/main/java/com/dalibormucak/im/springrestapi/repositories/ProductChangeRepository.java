@@ -0,0 +1,9 @@
+package com.dalibormucak.im.springrestapi.repositories;
+
+import com.dalibormucak.im.springrestapi.models.ProductChange;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ProductChangeRepository extends JpaRepository<ProductChange, Long>, ProductChangeRepositoryCustom {
+}
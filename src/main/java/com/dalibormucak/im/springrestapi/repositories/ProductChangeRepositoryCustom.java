@@ -0,0 +1,14 @@
+package com.dalibormucak.im.springrestapi.repositories;
+
+import com.dalibormucak.im.springrestapi.models.ProductChange;
+import com.dalibormucak.im.springrestapi.models.ProductChangeCursor;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface ProductChangeRepositoryCustom {
+
+    List<ProductChange> findPublishableAfter(ProductChangeCursor after, int limit);
+
+    Optional<ProductChangeCursor> findLastPublishable();
+}
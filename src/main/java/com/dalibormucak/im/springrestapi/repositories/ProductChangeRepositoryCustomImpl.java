@@ -0,0 +1,49 @@
+package com.dalibormucak.im.springrestapi.repositories;
+
+import com.dalibormucak.im.springrestapi.models.ProductChange;
+import com.dalibormucak.im.springrestapi.models.ProductChangeCursor;
+import org.hibernate.jpa.QueryHints;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.List;
+import java.util.Optional;
+
+class ProductChangeRepositoryCustomImpl implements ProductChangeRepositoryCustom {
+
+//    a change is publishable once no transaction older than the one that wrote it is still running,
+//    from then on no change can appear before it in (tx_id, id) order
+    private static final String PUBLISHABLE = "c.tx_id < pg_snapshot_xmin(pg_current_snapshot())";
+    private static final String PUBLISHABLE_AFTER_QUERY = "SELECT c.id, CAST(CAST(c.tx_id AS text) AS bigint) AS tx_id, " +
+            "c.type, c.product_id, c.product_version, c.product, c.changed_at FROM product_change c " +
+            "WHERE (c.tx_id, c.id) > (CAST(:txId AS xid8), :id) AND " + PUBLISHABLE + " " +
+            "ORDER BY c.tx_id, c.id LIMIT :limit";
+    private static final String LAST_PUBLISHABLE_QUERY = "SELECT CAST(CAST(c.tx_id AS text) AS bigint), c.id " +
+            "FROM product_change c WHERE " + PUBLISHABLE + " ORDER BY c.tx_id DESC, c.id DESC LIMIT 1";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @Transactional(readOnly = true)
+    @SuppressWarnings("unchecked")
+    public List<ProductChange> findPublishableAfter(ProductChangeCursor after, int limit) {
+        return entityManager.createNativeQuery(PUBLISHABLE_AFTER_QUERY, ProductChange.class)
+                .setParameter("txId", Long.toString(after.getTxId()))
+                .setParameter("id", after.getId())
+                .setParameter("limit", limit)
+                .setHint(QueryHints.HINT_READONLY, true)
+                .getResultList();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    @SuppressWarnings("unchecked")
+    public Optional<ProductChangeCursor> findLastPublishable() {
+        List<Object[]> rows = entityManager.createNativeQuery(LAST_PUBLISHABLE_QUERY).getResultList();
+        return rows.stream()
+                .findFirst()
+                .map(row -> new ProductChangeCursor(((Number) row[0]).longValue(), ((Number) row[1]).longValue()));
+    }
+}
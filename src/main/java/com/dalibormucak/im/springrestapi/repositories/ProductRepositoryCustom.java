@@ -0,0 +1,69 @@
+package com.dalibormucak.im.springrestapi.repositories;
+
+import com.dalibormucak.im.springrestapi.models.Product;
+import com.dalibormucak.im.springrestapi.models.ProductCursor;
+import com.dalibormucak.im.springrestapi.models.ProductField;
+import com.dalibormucak.im.springrestapi.models.ProductFilter;
+import com.dalibormucak.im.springrestapi.models.ProductMergeResult;
+import com.dalibormucak.im.springrestapi.models.ProductSortField;
+import org.springframework.data.domain.Sort;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+public interface ProductRepositoryCustom {
+
+    Optional<Product> findByCode(String code);
+
+    List<Product> findAllByIdOrCode(Collection<Integer> ids, Collection<String> codes);
+
+    List<Product> findPage(ProductFilter filter, ProductSortField sortField, Sort.Direction direction,
+                           ProductCursor after, int limit);
+
+    List<Product> search(String term, int offset, int limit);
+
+//    the projected reads select only the id, version and given fields of the products
+//    and return them as detached products with the other fields left null
+
+    List<Product> findAllProjected(Set<ProductField> fields);
+
+    List<Product> findPageProjected(ProductFilter filter, ProductSortField sortField, Sort.Direction direction,
+                                    ProductCursor after, int limit, Set<ProductField> fields);
+
+    List<Product> searchProjected(String term, int offset, int limit, Set<ProductField> fields);
+
+    Stream<Product> streamAll();
+
+    Optional<Integer> findChunkEndId(int afterId, int chunkSize);
+
+    int recalculatePricesEur(BigDecimal exchangeRateEurToKn, int afterId, int lastId);
+
+    Optional<Product> updateById(Integer id, Product values, List<Long> acceptedVersions);
+
+    Product upsertByCode(Product values);
+
+    Optional<Integer> deleteByCode(String code);
+
+    int deleteVersioned(Integer id, List<Long> acceptedVersions);
+
+    ProductMergeResult importProducts(ImportSource source) throws IOException;
+
+//    writes the rows of an import while they are being copied to the staging table
+    @FunctionalInterface
+    interface ImportSource {
+
+        void writeTo(StagingWriter writer) throws IOException;
+    }
+
+//    line is the line of the imported file the product comes from
+    @FunctionalInterface
+    interface StagingWriter {
+
+        void write(long line, Product product) throws IOException;
+    }
+}
@@ -0,0 +1,630 @@
+package com.dalibormucak.im.springrestapi.repositories;
+
+import com.dalibormucak.im.springrestapi.exceptions.ConcurrentProductWriteException;
+import com.dalibormucak.im.springrestapi.models.Product;
+import com.dalibormucak.im.springrestapi.models.ProductCursor;
+import com.dalibormucak.im.springrestapi.models.ProductField;
+import com.dalibormucak.im.springrestapi.models.ProductFilter;
+import com.dalibormucak.im.springrestapi.models.ProductMergeResult;
+import com.dalibormucak.im.springrestapi.models.ProductSortField;
+import org.hibernate.Cache;
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.hibernate.jpa.QueryHints;
+import org.hibernate.query.NativeQuery;
+import org.hibernate.type.BigDecimalType;
+import org.hibernate.type.BooleanType;
+import org.hibernate.type.StringType;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Tuple;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+class ProductRepositoryCustomImpl implements ProductRepositoryCustom {
+
+    private static final int STREAM_FETCH_SIZE = 500;
+//    a query space no entity maps to, the write statements evict the cached product themselves
+//    instead of letting Hibernate invalidate every cache region
+    private static final String WRITE_QUERY_SPACE = "product_write";
+//    %s is the selected columns
+    private static final String SEARCH_QUERY = "SELECT %s FROM product p, to_tsquery('simple', :tsQuery) search_query " +
+            "WHERE p.search_vector @@ search_query " +
+            "OR p.code ILIKE :pattern OR p.name ILIKE :pattern OR p.description ILIKE :pattern " +
+            "ORDER BY ts_rank(p.search_vector, search_query) " +
+            "+ coalesce(greatest(similarity(p.code, :term), similarity(p.name, :term)), 0) DESC, p.id";
+//    the ids and codes are bound as single array literals, so the statement is the same for any number of them
+    private static final String ID_OR_CODE_QUERY = "SELECT p.* FROM product p " +
+            "WHERE p.id = ANY(CAST(:ids AS integer[])) OR p.code = ANY(CAST(:codes AS varchar[]))";
+    private static final String CHUNK_END_ID_QUERY = "SELECT max(chunk.id) FROM " +
+            "(SELECT id FROM product WHERE id > :afterId ORDER BY id LIMIT :chunkSize) chunk";
+    private static final String RETURNED_COLUMNS = "p.id, p.code, p.name, p.price_hrk, p.price_eur, p.description, " +
+            "p.is_available, p.version";
+//    price_hrk / rate rounded to cents with HALF_EVEN like ProductService.calcPriceInEur, PostgreSQL round() would
+//    round half away from zero; only rows whose price changes are updated and get a new version,
+//    every updated product gets its product_change outbox row in the same statement
+    private static final String RECALCULATE_PRICES_EUR_UPDATE = "WITH updated AS (UPDATE product p " +
+            "SET price_eur = recalculated.price_eur, version = p.version + 1 " +
+            "FROM (SELECT id, CASE WHEN cents = trunc(cents) + 0.5 AND mod(trunc(cents), 2) = 0 " +
+            "THEN trunc(cents) / 100 ELSE round(cents) / 100 END AS price_eur " +
+            "FROM (SELECT id, price_hrk * 100 / :exchangeRate AS cents FROM product " +
+            "WHERE id > :afterId AND id <= :lastId) product_cents) recalculated " +
+            "WHERE p.id = recalculated.id AND p.price_eur IS DISTINCT FROM recalculated.price_eur " +
+            "RETURNING " + RETURNED_COLUMNS + ") " +
+            "INSERT INTO product_change (id, type, product_id, product_version, product, changed_at) " +
+            "SELECT nextval('product_change_id_seq'), 'UPDATED', id, version, jsonb_build_object('id', id, " +
+            "'code', code, 'name', name, 'price_hrk', price_hrk, 'price_eur', price_eur, " +
+            "'description', description, 'is_available', is_available), now() FROM updated";
+//    the previous code is read under the row lock, so a changed code is never missed by the cache eviction
+    private static final String UPDATE_BY_ID = "UPDATE product p " +
+            "SET code = :code, name = :name, price_hrk = :priceHrk, price_eur = :priceEur, " +
+            "description = :description, is_available = :isAvailable, version = p.version + 1 " +
+            "FROM (SELECT id, code FROM product WHERE id = :id FOR UPDATE) previous " +
+            "WHERE p.id = previous.id%s " +
+            "RETURNING " + RETURNED_COLUMNS + ", p.code <> previous.code AS code_changed";
+    private static final String VERSION_CONDITION = " AND p.version IN (:versions)";
+//    the product with the code is updated first and only inserted when there is none, so a value of the sequence
+//    shared with Hibernate (like in the reactive profile) is only taken for a new product; an insert losing a race
+//    for the code returns no row; an inserted product has version 0, an updated one at least 1
+    private static final String UPSERT_BY_CODE = "WITH updated AS (UPDATE product p " +
+            "SET name = :name, price_hrk = :priceHrk, price_eur = :priceEur, description = :description, " +
+            "is_available = :isAvailable, version = p.version + 1 WHERE p.code = :code " +
+            "RETURNING " + RETURNED_COLUMNS + "), " +
+            "inserted AS (INSERT INTO product AS p " +
+            "(id, code, name, price_hrk, price_eur, description, is_available, version) " +
+            "SELECT nextval('product_id_seq'), :code, :name, :priceHrk, :priceEur, :description, :isAvailable, 0 " +
+            "WHERE NOT EXISTS (SELECT 1 FROM updated) ON CONFLICT (code) DO NOTHING " +
+            "RETURNING " + RETURNED_COLUMNS + ") " +
+            "SELECT * FROM updated UNION ALL SELECT * FROM inserted";
+    private static final int UPSERT_ATTEMPTS = 3;
+    private static final String DELETE_BY_CODE = "DELETE FROM product WHERE code = :code RETURNING id";
+    private static final String DELETE_BY_ID = "DELETE FROM product p WHERE p.id = :id%s";
+//    the staging table only lives until the end of the import transaction
+    private static final String CREATE_STAGING_TABLE = "CREATE TEMPORARY TABLE product_import (line BIGINT, " +
+            "code VARCHAR(10), name VARCHAR(32), price_hrk DECIMAL(12, 2), price_eur DECIMAL(12, 2), " +
+            "description VARCHAR(128), is_available BOOLEAN) ON COMMIT DROP";
+    private static final String COPY_TO_STAGING = "COPY product_import " +
+            "(line, code, name, price_hrk, price_eur, description, is_available) FROM STDIN (FORMAT csv)";
+    private static final int COPY_BUFFER_SIZE = 65536;
+    private static final String DUPLICATE_LINES_QUERY = "SELECT line FROM (SELECT line, " +
+            "row_number() OVER (PARTITION BY code ORDER BY line) AS occurrence FROM product_import) staged " +
+            "WHERE occurrence > 1 ORDER BY line";
+//    the first row of every code is merged, existing products are only updated (and get a new version and
+//    an outbox row) when a value differs; only the codes missing from product are inserted, so a value of the
+//    sequence is only taken for a new product, in the order of the file; a code inserted concurrently after
+//    the statement has started is updated by the ON CONFLICT clause instead
+    private static final String MERGE_STAGED = "WITH staged AS (SELECT DISTINCT ON (code) * FROM product_import " +
+            "ORDER BY code, line), " +
+            "updated AS (UPDATE product p SET name = s.name, price_hrk = s.price_hrk, price_eur = s.price_eur, " +
+            "description = s.description, is_available = s.is_available, version = p.version + 1 " +
+            "FROM staged s WHERE p.code = s.code " +
+            "AND (p.name, p.price_hrk, p.price_eur, p.description, p.is_available) IS DISTINCT FROM " +
+            "(s.name, s.price_hrk, s.price_eur, s.description, s.is_available) " +
+            "RETURNING " + RETURNED_COLUMNS + "), " +
+            "inserted AS (INSERT INTO product AS p " +
+            "(id, code, name, price_hrk, price_eur, description, is_available, version) " +
+            "SELECT nextval('product_id_seq'), code, name, price_hrk, price_eur, description, is_available, 0 " +
+            "FROM staged s WHERE NOT EXISTS (SELECT 1 FROM product existing WHERE existing.code = s.code) " +
+            "ORDER BY line " +
+            "ON CONFLICT (code) DO UPDATE SET name = excluded.name, price_hrk = excluded.price_hrk, " +
+            "price_eur = excluded.price_eur, description = excluded.description, " +
+            "is_available = excluded.is_available, version = p.version + 1 " +
+            "WHERE (p.name, p.price_hrk, p.price_eur, p.description, p.is_available) IS DISTINCT FROM " +
+            "(excluded.name, excluded.price_hrk, excluded.price_eur, excluded.description, excluded.is_available) " +
+            "RETURNING " + RETURNED_COLUMNS + "), " +
+            "merged AS (SELECT * FROM updated UNION ALL SELECT * FROM inserted), " +
+            "changes AS (INSERT INTO product_change (id, type, product_id, product_version, product, changed_at) " +
+            "SELECT nextval('product_change_id_seq'), CASE WHEN version = 0 THEN 'CREATED' ELSE 'UPDATED' END, " +
+            "id, version, jsonb_build_object('id', id, 'code', code, 'name', name, 'price_hrk', price_hrk, " +
+            "'price_eur', price_eur, 'description', description, 'is_available', is_available), now() " +
+            "FROM merged) " +
+            "SELECT count(*) FILTER (WHERE version = 0) AS created, count(*) FILTER (WHERE version > 0) AS updated " +
+            "FROM merged";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+//    natural id lookups are resolved through the product-code cache region before hitting the database
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<Product> findByCode(String code) {
+        return entityManager.unwrap(Session.class)
+                .bySimpleNaturalId(Product.class)
+                .loadOptional(code);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    @SuppressWarnings("unchecked")
+    public List<Product> findAllByIdOrCode(Collection<Integer> ids, Collection<String> codes) {
+        return entityManager.createNativeQuery(ID_OR_CODE_QUERY, Product.class)
+                .setParameter("ids", toArrayLiteral(ids))
+                .setParameter("codes", toArrayLiteral(codes))
+                .setHint(QueryHints.HINT_READONLY, true)
+                .getResultList();
+    }
+
+//    PostgreSQL array literal with every element quoted, e.g. {"1","2"}
+    private static String toArrayLiteral(Collection<?> elements) {
+        return elements.stream()
+                .map(element -> '"' + String.valueOf(element).replace("\\", "\\\\").replace("\"", "\\\"") + '"')
+                .collect(Collectors.joining(",", "{", "}"));
+    }
+
+//    keyset pagination: the page starts right after the (sort value, id) pair of the cursor,
+//    so the cost of a page does not depend on how deep into the catalogue it is; products without a sort value
+//    come last in ascending and first in descending order, like in the (column, id) indexes from
+//    schema-postgres.sql, and are read with a query of their own, so that every query reads a range of an index
+    @Override
+    @Transactional(readOnly = true)
+    public List<Product> findPage(ProductFilter filter, ProductSortField sortField, Sort.Direction direction,
+                                  ProductCursor after, int limit) {
+        return readPage(sortField, direction, after, limit, (nullSortValues, segmentLimit) -> {
+            CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+            CriteriaQuery<Product> query = cb.createQuery(Product.class);
+            Root<Product> product = query.from(Product.class);
+            query.select(product);
+            return entityManager.createQuery(pageQuery(cb, query, product, filter, sortField, direction, after,
+                            nullSortValues))
+                    .setMaxResults(segmentLimit)
+                    .getResultList();
+        });
+    }
+
+//    the sort field is read as well, the next cursor is issued from the last product of the page
+    @Override
+    @Transactional(readOnly = true)
+    public List<Product> findPageProjected(ProductFilter filter, ProductSortField sortField, Sort.Direction direction,
+                                           ProductCursor after, int limit, Set<ProductField> fields) {
+        Set<ProductField> selectedFields = EnumSet.copyOf(fields);
+        selectedFields.add(sortField.getField());
+        return readPage(sortField, direction, after, limit, (nullSortValues, segmentLimit) -> {
+            CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+            CriteriaQuery<Tuple> query = cb.createTupleQuery();
+            Root<Product> product = query.from(Product.class);
+            query.multiselect(selections(product, selectedFields));
+            return entityManager.createQuery(pageQuery(cb, query, product, filter, sortField, direction, after,
+                            nullSortValues))
+                    .setMaxResults(segmentLimit)
+                    .getResultStream()
+                    .map(tuple -> toProduct(tuple, selectedFields))
+                    .collect(Collectors.toList());
+        });
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<Product> findAllProjected(Set<ProductField> fields) {
+        CriteriaQuery<Tuple> query = entityManager.getCriteriaBuilder().createTupleQuery();
+        Root<Product> product = query.from(Product.class);
+        query.multiselect(selections(product, fields));
+        return entityManager.createQuery(query)
+                .getResultStream()
+                .map(tuple -> toProduct(tuple, fields))
+                .collect(Collectors.toList());
+    }
+
+//    reads the products with a sort value and the ones without it in the order of the page, starting with
+//    the part the cursor is in, until the page is full; readSegment is given whether to read the products
+//    without a sort value and how many products are still missing
+    private static <T> List<T> readPage(ProductSortField sortField, Sort.Direction direction, ProductCursor after,
+                                        int limit, BiFunction<Boolean, Integer, List<T>> readSegment) {
+        if (!sortField.isNullable()) {
+            return readSegment.apply(false, limit);
+        }
+        List<Boolean> segments = direction.isAscending() ? List.of(false, true) : List.of(true, false);
+        int firstSegment = after == null ? 0 : segments.indexOf(after.getSortValue() == null);
+        List<T> page = new ArrayList<>(limit);
+        for (int segment = firstSegment; segment < segments.size() && page.size() < limit; segment++) {
+            page.addAll(readSegment.apply(segments.get(segment), limit - page.size()));
+        }
+        return page;
+    }
+
+    private <T> CriteriaQuery<T> pageQuery(CriteriaBuilder cb, CriteriaQuery<T> query, Root<Product> product,
+                                           ProductFilter filter, ProductSortField sortField,
+                                           Sort.Direction direction, ProductCursor after, boolean nullSortValues) {
+        Expression<Comparable<Object>> sortAttribute = product.get(sortField.getAttributeName());
+        Expression<Integer> id = product.get("id");
+        boolean cursorInSegment = after != null && (after.getSortValue() == null) == nullSortValues;
+
+        List<Predicate> predicates = filterPredicates(cb, product, filter);
+        if (nullSortValues) {
+            predicates.add(cb.isNull(sortAttribute));
+            if (cursorInSegment) {
+                predicates.add(direction.isAscending()
+                        ? cb.greaterThan(id, after.getId()) : cb.lessThan(id, after.getId()));
+            }
+        } else if (cursorInSegment) {
+            predicates.add(keysetPredicate(cb, sortField, direction, sortAttribute, id, after));
+        } else if (sortField.isNullable()) {
+            predicates.add(cb.isNotNull(sortAttribute));
+        }
+        query.where(predicates.toArray(new Predicate[0]));
+        if (nullSortValues) {
+            query.orderBy(direction.isAscending() ? cb.asc(id) : cb.desc(id));
+        } else if (direction.isAscending()) {
+            query.orderBy(cb.asc(sortAttribute), cb.asc(id));
+        } else {
+            query.orderBy(cb.desc(sortAttribute), cb.desc(id));
+        }
+        return query;
+    }
+
+//    the id and version are always selected, they make up the entity tags of the responses
+    private static List<Selection<?>> selections(Root<Product> product, Set<ProductField> fields) {
+        List<Selection<?>> selections = new ArrayList<>();
+        selections.add(product.get("id").alias("id"));
+        selections.add(product.get("version").alias("version"));
+        fields.stream()
+                .filter(field -> field != ProductField.ID)
+                .map(ProductField::getParameterName)
+                .forEach(attribute -> selections.add(product.get(attribute).alias(attribute)));
+        return selections;
+    }
+
+    private static String selectedColumns(Set<ProductField> fields) {
+        StringBuilder columns = new StringBuilder("p.id, p.version");
+        fields.stream()
+                .filter(field -> field != ProductField.ID)
+                .forEach(field -> columns.append(", p.").append(field.getParameterName()));
+        return columns.toString();
+    }
+
+//    a new product built from the selected values, it is not managed by the persistence context
+    private static Product toProduct(Tuple tuple, Set<ProductField> fields) {
+        Product.ProductBuilder builder = Product.builder()
+                .id(((Number) tuple.get("id")).intValue())
+                .version(((Number) tuple.get("version")).longValue());
+        fields.stream()
+                .filter(field -> field != ProductField.ID)
+                .forEach(field -> field.set(builder, tuple.get(field.getParameterName())));
+        return builder.build();
+    }
+
+    private List<Predicate> filterPredicates(CriteriaBuilder cb, Root<Product> product, ProductFilter filter) {
+        List<Predicate> predicates = new ArrayList<>();
+        if (filter.getIsAvailable() != null) {
+            predicates.add(cb.equal(product.get("is_available"), filter.getIsAvailable()));
+        }
+        if (filter.getMinPriceHrk() != null) {
+            predicates.add(cb.greaterThanOrEqualTo(product.<BigDecimal>get("price_hrk"), filter.getMinPriceHrk()));
+        }
+        if (filter.getMaxPriceHrk() != null) {
+            predicates.add(cb.lessThanOrEqualTo(product.<BigDecimal>get("price_hrk"), filter.getMaxPriceHrk()));
+        }
+        return predicates;
+    }
+
+//    (attribute, id) after the cursor, written with a bound on the attribute alone that the index scan starts from,
+//    as Hibernate cannot compare the (attribute, id) row
+    @SuppressWarnings("unchecked")
+    private Predicate keysetPredicate(CriteriaBuilder cb, ProductSortField sortField, Sort.Direction direction,
+                                      Expression<Comparable<Object>> sortAttribute, Expression<Integer> id,
+                                      ProductCursor after) {
+        if (sortField == ProductSortField.ID) {
+            return direction.isAscending() ? cb.greaterThan(id, after.getId()) : cb.lessThan(id, after.getId());
+        }
+        Comparable<Object> sortValue = (Comparable<Object>) after.getSortValue();
+        if (direction.isAscending()) {
+            return cb.and(cb.greaterThanOrEqualTo(sortAttribute, sortValue),
+                    cb.or(cb.greaterThan(sortAttribute, sortValue), cb.greaterThan(id, after.getId())));
+        }
+        return cb.and(cb.lessThanOrEqualTo(sortAttribute, sortValue),
+                cb.or(cb.lessThan(sortAttribute, sortValue), cb.lessThan(id, after.getId())));
+    }
+
+//    words of the term are matched as full-text prefixes and the whole term anywhere in the code, name
+//    or description, both backed by the GIN indexes from schema-postgres.sql; full-text rank and trigram
+//    similarity of the code and name decide the order
+    @Override
+    @Transactional(readOnly = true)
+    @SuppressWarnings("unchecked")
+    public List<Product> search(String term, int offset, int limit) {
+        return entityManager.createNativeQuery(String.format(SEARCH_QUERY, "p.*"), Product.class)
+                .setParameter("tsQuery", toPrefixTsQuery(term))
+                .setParameter("pattern", "%" + escapeLikePattern(term) + "%")
+                .setParameter("term", term)
+                .setHint(QueryHints.HINT_READONLY, true)
+                .setFirstResult(offset)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    @SuppressWarnings("unchecked")
+    public List<Product> searchProjected(String term, int offset, int limit, Set<ProductField> fields) {
+        List<Tuple> tuples = entityManager.createNativeQuery(String.format(SEARCH_QUERY, selectedColumns(fields)),
+                        Tuple.class)
+                .setParameter("tsQuery", toPrefixTsQuery(term))
+                .setParameter("pattern", "%" + escapeLikePattern(term) + "%")
+                .setParameter("term", term)
+                .setFirstResult(offset)
+                .setMaxResults(limit)
+                .getResultList();
+        return tuples.stream()
+                .map(tuple -> toProduct(tuple, fields))
+                .collect(Collectors.toList());
+    }
+
+    private static String toPrefixTsQuery(String term) {
+        return Arrays.stream(term.split("[^\\p{L}\\p{N}]+"))
+                .filter(word -> !word.isEmpty())
+                .map(word -> word + ":*")
+                .collect(Collectors.joining(" & "));
+    }
+
+    private static String escapeLikePattern(String term) {
+        return term.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+//    last id of the next chunk of at most chunkSize products, empty once all products have been processed;
+//    not read-only so that it is read on the primary, a lagging replica would end the recalculation early
+    @Override
+    @Transactional
+    public Optional<Integer> findChunkEndId(int afterId, int chunkSize) {
+        Number chunkEndId = (Number) entityManager.createNativeQuery(CHUNK_END_ID_QUERY)
+                .setParameter("afterId", afterId)
+                .setParameter("chunkSize", chunkSize)
+                .getSingleResult();
+        return Optional.ofNullable(chunkEndId).map(Number::intValue);
+    }
+
+//    a single set-based UPDATE per chunk; the product cache region is invalidated after every chunk
+    @Override
+    @Transactional
+    public int recalculatePricesEur(BigDecimal exchangeRateEurToKn, int afterId, int lastId) {
+        return entityManager.createNativeQuery(RECALCULATE_PRICES_EUR_UPDATE)
+                .unwrap(NativeQuery.class)
+                .addSynchronizedEntityClass(Product.class)
+                .setParameter("exchangeRate", exchangeRateEurToKn)
+                .setParameter("afterId", afterId)
+                .setParameter("lastId", lastId)
+                .executeUpdate();
+    }
+
+//    a single UPDATE ... RETURNING instead of loading the product first; empty when the product does not exist
+//    or its version is not one of the accepted versions (null accepts any version)
+    @Override
+    @Transactional
+    public Optional<Product> updateById(Integer id, Product values, List<Long> acceptedVersions) {
+        if (acceptedVersions != null && acceptedVersions.isEmpty()) {
+            return Optional.empty();
+        }
+        String sql = String.format(UPDATE_BY_ID, acceptedVersions == null ? "" : VERSION_CONDITION);
+        NativeQuery<?> update = writeQuery(sql, values)
+                .addScalar("code_changed", BooleanType.INSTANCE)
+                .setParameter("code", values.getCode(), StringType.INSTANCE)
+                .setParameter("id", id);
+        if (acceptedVersions != null) {
+            update.setParameterList("versions", acceptedVersions);
+        }
+        Object[] row = (Object[]) update.uniqueResult();
+        if (row == null) {
+            return Optional.empty();
+        }
+        evictFromCache(id, (Boolean) row[1]);
+        return Optional.of((Product) row[0]);
+    }
+
+//    UPDATE and INSERT ... ON CONFLICT (code) DO NOTHING, backed by the unique index of product.code, create or
+//    update the product in a single statement; it is repeated when a concurrent transaction has inserted the code
+//    in between, and then updates that product, but only a few times, as a snapshot that cannot see the inserted
+//    product (REPEATABLE READ) or a product deleted again in between would make it miss every time
+    @Override
+    @Transactional
+    public Product upsertByCode(Product values) {
+        Product product = null;
+        for (int attempt = 0; attempt < UPSERT_ATTEMPTS && product == null; attempt++) {
+            product = (Product) writeQuery(UPSERT_BY_CODE, values)
+                    .setParameter("code", values.getCode(), StringType.INSTANCE)
+                    .uniqueResult();
+        }
+        if (product == null) {
+            throw new ConcurrentProductWriteException("Product with code " + values.getCode()
+                    + " is being written concurrently");
+        }
+        evictFromCache(product.getId(), false);
+        return product;
+    }
+
+    @Override
+    @Transactional
+    public Optional<Integer> deleteByCode(String code) {
+        Optional<Integer> deletedId = entityManager.createNativeQuery(DELETE_BY_CODE)
+                .unwrap(NativeQuery.class)
+                .addSynchronizedQuerySpace(WRITE_QUERY_SPACE)
+                .setParameter("code", code, StringType.INSTANCE)
+                .uniqueResultOptional()
+                .map(id -> ((Number) id).intValue());
+        deletedId.ifPresent(id -> evictFromCache(id, true));
+        return deletedId;
+    }
+
+//    a single DELETE, with the accepted versions (null accepts any version) in its WHERE clause
+    @Override
+    @Transactional
+    public int deleteVersioned(Integer id, List<Long> acceptedVersions) {
+        if (acceptedVersions != null && acceptedVersions.isEmpty()) {
+            return 0;
+        }
+        String sql = String.format(DELETE_BY_ID, acceptedVersions == null ? "" : VERSION_CONDITION);
+        NativeQuery<?> delete = entityManager.createNativeQuery(sql)
+                .unwrap(NativeQuery.class)
+                .addSynchronizedQuerySpace(WRITE_QUERY_SPACE)
+                .setParameter("id", id);
+        if (acceptedVersions != null) {
+            delete.setParameterList("versions", acceptedVersions);
+        }
+        int deletedRows = delete.executeUpdate();
+        if (deletedRows > 0) {
+            evictFromCache(id, true);
+        }
+        return deletedRows;
+    }
+
+//    the rows are copied into a staging table with COPY while the source is still producing them,
+//    then merged into product with a single statement that also writes the outbox rows of the changes
+    @Override
+    @Transactional
+    @SuppressWarnings("unchecked")
+    public ProductMergeResult importProducts(ImportSource source) throws IOException {
+        Session session = entityManager.unwrap(Session.class);
+        session.createNativeQuery(CREATE_STAGING_TABLE)
+                .addSynchronizedQuerySpace(WRITE_QUERY_SPACE)
+                .executeUpdate();
+        try {
+            session.doWork(connection -> copyToStaging(connection.unwrap(PGConnection.class), source));
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+        List<Long> duplicateLines = ((List<Number>) session.createNativeQuery(DUPLICATE_LINES_QUERY)
+                .addSynchronizedQuerySpace(WRITE_QUERY_SPACE)
+                .getResultList())
+                .stream()
+                .map(Number::longValue)
+                .collect(Collectors.toList());
+        Object[] counts = (Object[]) session.createNativeQuery(MERGE_STAGED)
+                .addSynchronizedQuerySpace(WRITE_QUERY_SPACE)
+                .getSingleResult();
+        long updated = ((Number) counts[1]).longValue();
+        if (updated > 0) {
+            Cache cache = session.getSessionFactory().getCache();
+            evictFromCache(() -> cache.evictEntityData(Product.class));
+        }
+        return new ProductMergeResult(((Number) counts[0]).longValue(), updated, duplicateLines);
+    }
+
+//    an IOException of the source is passed on unchecked, a failed COPY as the SQLException it is caused by
+    private static void copyToStaging(PGConnection connection, ImportSource source) throws SQLException {
+        PGCopyOutputStream copy = new PGCopyOutputStream(connection, COPY_TO_STAGING, COPY_BUFFER_SIZE);
+        try {
+            Writer writer = new OutputStreamWriter(copy, StandardCharsets.UTF_8);
+            StringBuilder row = new StringBuilder();
+            source.writeTo((line, product) -> {
+                row.setLength(0);
+                row.append(line).append(',');
+                appendCsvValue(row, product.getCode()).append(',');
+                appendCsvValue(row, product.getName()).append(',');
+                row.append(product.getPrice_hrk().toPlainString()).append(',');
+                row.append(product.getPrice_eur().toPlainString()).append(',');
+                appendCsvValue(row, product.getDescription()).append(',');
+                row.append(product.getIs_available()).append('\n');
+                writer.append(row);
+            });
+            writer.close();
+        } catch (IOException ex) {
+            cancelCopy(copy);
+            if (ex.getCause() instanceof SQLException) {
+                throw (SQLException) ex.getCause();
+            }
+            throw new UncheckedIOException(ex);
+        } catch (RuntimeException ex) {
+            cancelCopy(copy);
+            throw ex;
+        }
+    }
+
+    private static void cancelCopy(PGCopyOutputStream copy) throws SQLException {
+        if (copy.isActive()) {
+            copy.cancelCopy();
+        }
+    }
+
+//    unquoted empty values are NULL for COPY, quoted ones empty strings
+    private static StringBuilder appendCsvValue(StringBuilder row, String value) {
+        if (value == null) {
+            return row;
+        }
+        return row.append('"').append(value.replace("\"", "\"\"")).append('"');
+    }
+
+//    the returned row is mapped to the product without putting it into the second-level cache,
+//    the statement does not invalidate any cache region on its own
+    private NativeQuery<?> writeQuery(String sql, Product values) {
+        return entityManager.createNativeQuery(sql)
+                .unwrap(NativeQuery.class)
+                .addEntity(Product.class)
+                .addSynchronizedQuerySpace(WRITE_QUERY_SPACE)
+                .setCacheMode(CacheMode.IGNORE)
+                .setParameter("name", values.getName(), StringType.INSTANCE)
+                .setParameter("priceHrk", values.getPrice_hrk(), BigDecimalType.INSTANCE)
+                .setParameter("priceEur", values.getPrice_eur(), BigDecimalType.INSTANCE)
+                .setParameter("description", values.getDescription(), StringType.INSTANCE)
+                .setParameter("isAvailable", values.getIs_available(), BooleanType.INSTANCE);
+    }
+
+//    only the written product is evicted, and once more after the commit in case a concurrent read has cached
+//    the old row in between; the product-code region is cleared when a code disappears or changes
+    private void evictFromCache(Integer id, boolean codeChanged) {
+        Cache cache = entityManager.unwrap(Session.class).getSessionFactory().getCache();
+        evictFromCache(() -> {
+            cache.evictEntityData(Product.class, id);
+            if (codeChanged) {
+                cache.evictNaturalIdData(Product.class);
+            }
+        });
+    }
+
+    private static void evictFromCache(Runnable evict) {
+        evict.run();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                evict.run();
+            }
+        });
+    }
+
+//    reads the products through a server-side cursor (PostgreSQL only uses one inside a transaction)
+//    and detaches every product once it is read, so the persistence context never grows; the products
+//    are not put into the second-level cache, where the whole catalogue would push out the products being read;
+//    a cache mode hint of the query would only last until the cursor is opened, not while the rows are read,
+//    so the cache mode of the session is changed until the stream is closed
+    @Override
+    public Stream<Product> streamAll() {
+        Session session = entityManager.unwrap(Session.class);
+        CacheMode cacheMode = session.getCacheMode();
+        session.setCacheMode(CacheMode.IGNORE);
+        try {
+            return entityManager.createQuery("SELECT p FROM Product p ORDER BY p.id", Product.class)
+                    .setHint(QueryHints.HINT_FETCH_SIZE, STREAM_FETCH_SIZE)
+                    .setHint(QueryHints.HINT_READONLY, true)
+                    .getResultStream()
+                    .peek(entityManager::detach)
+                    .onClose(() -> session.setCacheMode(cacheMode));
+        } catch (RuntimeException ex) {
+            session.setCacheMode(cacheMode);
+            throw ex;
+        }
+    }
+}
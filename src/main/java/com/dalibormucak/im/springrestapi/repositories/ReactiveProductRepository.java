@@ -0,0 +1,10 @@
+package com.dalibormucak.im.springrestapi.repositories;
+
+import com.dalibormucak.im.springrestapi.models.Product;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+
+//    R2DBC repository of the reactive profile, mapped to the same product table as ProductRepository
+@Profile("reactive")
+public interface ReactiveProductRepository extends R2dbcRepository<Product, Integer>, ReactiveProductRepositoryCustom {
+}
@@ -0,0 +1,15 @@
+package com.dalibormucak.im.springrestapi.repositories;
+
+import com.dalibormucak.im.springrestapi.models.Product;
+import reactor.core.publisher.Mono;
+
+//    every write also writes its product_change outbox row
+public interface ReactiveProductRepositoryCustom {
+
+//    a new product with its id from product_id_seq and version 0
+    Mono<Product> create(Product product);
+
+    Mono<Product> updateVersioned(Product product);
+
+    Mono<Void> deleteVersioned(Product product);
+}
@@ -0,0 +1,101 @@
+package com.dalibormucak.im.springrestapi.repositories;
+
+import com.dalibormucak.im.springrestapi.models.Product;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.util.Objects;
+
+//    optimistic locking of the reactive profile, compatible with the Hibernate @Version of ProductRepository:
+//    a row is only changed while it still has the version it was read with, and every update increments it;
+//    every write also inserts its product_change outbox row in the same statement, like the writes of
+//    ProductRepositoryCustomImpl, so no reactive transaction is needed to keep them together
+class ReactiveProductRepositoryCustomImpl implements ReactiveProductRepositoryCustom {
+
+    private static final String RETURNED_COLUMNS = "id, code, name, price_hrk, price_eur, description, " +
+            "is_available, version";
+    private static final String CHANGE_INSERT = "INSERT INTO product_change " +
+            "(id, type, product_id, product_version, product, changed_at) ";
+    private static final String CHANGED_PRODUCT = "jsonb_build_object('id', id, 'code', code, 'name', name, " +
+            "'price_hrk', price_hrk, 'price_eur', price_eur, 'description', description, " +
+            "'is_available', is_available)";
+//    the id comes from the sequence shared with Hibernate, whose pooled optimizer never reuses a value taken here
+    private static final String CREATE = "WITH created AS (INSERT INTO product " +
+            "(id, code, name, price_hrk, price_eur, description, is_available, version) " +
+            "VALUES (nextval('product_id_seq'), :code, :name, :priceHrk, :priceEur, :description, :isAvailable, 0) " +
+            "RETURNING " + RETURNED_COLUMNS + "), " +
+            "changes AS (" + CHANGE_INSERT + "SELECT nextval('product_change_id_seq'), 'CREATED', id, version, " +
+            CHANGED_PRODUCT + ", now() FROM created) " +
+            "SELECT id FROM created";
+    private static final String UPDATE_VERSIONED = "WITH updated AS (UPDATE product " +
+            "SET code = :code, name = :name, price_hrk = :priceHrk, price_eur = :priceEur, " +
+            "description = :description, is_available = :isAvailable, version = version + 1 " +
+            "WHERE id = :id AND version = :version RETURNING " + RETURNED_COLUMNS + "), " +
+            "changes AS (" + CHANGE_INSERT + "SELECT nextval('product_change_id_seq'), 'UPDATED', id, version, " +
+            CHANGED_PRODUCT + ", now() FROM updated) " +
+            "SELECT count(*) FROM updated";
+    private static final String DELETE_VERSIONED = "WITH deleted AS (DELETE FROM product " +
+            "WHERE id = :id AND version = :version RETURNING id), " +
+            "changes AS (" + CHANGE_INSERT + "SELECT nextval('product_change_id_seq'), 'DELETED', id, NULL, NULL, " +
+            "now() FROM deleted) " +
+            "SELECT count(*) FROM deleted";
+
+    private final R2dbcEntityTemplate entityTemplate;
+
+    ReactiveProductRepositoryCustomImpl(R2dbcEntityTemplate entityTemplate) {
+        this.entityTemplate = entityTemplate;
+    }
+
+    @Override
+    public Mono<Product> create(Product product) {
+        return bindValues(entityTemplate.getDatabaseClient().sql(CREATE), product)
+                .map(row -> row.get("id", Integer.class))
+                .one()
+                .map(id -> product.toBuilder().id(id).version(0L).build());
+    }
+
+    @Override
+    public Mono<Product> updateVersioned(Product product) {
+        long version = Objects.requireNonNullElse(product.getVersion(), 0L);
+        return bindValues(entityTemplate.getDatabaseClient().sql(UPDATE_VERSIONED), product)
+                .bind("id", product.getId())
+                .bind("version", version)
+                .map(row -> row.get(0, Long.class))
+                .one()
+                .flatMap(updatedRows -> updatedRows == 0
+                        ? Mono.error(concurrentModification(product))
+                        : Mono.just(product.toBuilder().version(version + 1).build()));
+    }
+
+    @Override
+    public Mono<Void> deleteVersioned(Product product) {
+        return entityTemplate.getDatabaseClient().sql(DELETE_VERSIONED)
+                .bind("id", product.getId())
+                .bind("version", Objects.requireNonNullElse(product.getVersion(), 0L))
+                .map(row -> row.get(0, Long.class))
+                .one()
+                .flatMap(deletedRows -> deletedRows == 0 ? Mono.error(concurrentModification(product)) : Mono.empty());
+    }
+
+    private static DatabaseClient.GenericExecuteSpec bindValues(DatabaseClient.GenericExecuteSpec spec,
+                                                                Product product) {
+        spec = bindNullable(spec, "code", product.getCode(), String.class);
+        spec = bindNullable(spec, "name", product.getName(), String.class);
+        spec = bindNullable(spec, "priceHrk", product.getPrice_hrk(), BigDecimal.class);
+        spec = bindNullable(spec, "priceEur", product.getPrice_eur(), BigDecimal.class);
+        spec = bindNullable(spec, "description", product.getDescription(), String.class);
+        return bindNullable(spec, "isAvailable", product.getIs_available(), Boolean.class);
+    }
+
+    private static DatabaseClient.GenericExecuteSpec bindNullable(DatabaseClient.GenericExecuteSpec spec, String name,
+                                                                  Object value, Class<?> type) {
+        return value == null ? spec.bindNull(name, type) : spec.bind(name, value);
+    }
+
+    private static OptimisticLockingFailureException concurrentModification(Product product) {
+        return new OptimisticLockingFailureException("Product with id " + product.getId() + " has been modified");
+    }
+}
@@ -0,0 +1,152 @@
+package com.dalibormucak.im.springrestapi.services;
+
+import com.dalibormucak.im.springrestapi.exceptions.ExchangeRateUnavailableException;
+import com.dalibormucak.im.springrestapi.models.ExchangeRate;
+import com.dalibormucak.im.springrestapi.models.ExchangeRateChangedEvent;
+import com.dalibormucak.im.springrestapi.models.dtos.ExchangeRateDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+//    keeps the whole HNB exchange rate table in memory so that product reads and writes never wait on the HNB API;
+//    the table of all currencies is fetched with a single call, refreshed in the background and the last known
+//    rates keep being served while they are revalidated or while the HNB API is unavailable; only the latest rate
+//    of every currency is kept, keyed by the currency alone, since prices are only ever converted at the current
+//    rate and the HNB API is only asked for the current table
+@Slf4j
+@Service
+public class ExchangeRateProvider {
+
+    private static final DateTimeFormatter HNB_DATE_FORMAT = DateTimeFormatter.ofPattern("dd.MM.yyyy");
+
+    private final HnbApiClient hnbApiClient;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Map<String, ExchangeRate> rates = new ConcurrentHashMap<>();
+    private final AtomicReference<CompletableFuture<Void>> refreshInFlight = new AtomicReference<>();
+    private volatile Instant tableFetchedAt;
+    @Value("${hnb.api.rates.ttl:PT1H}")
+    private Duration ttl;
+
+    @Autowired
+    public ExchangeRateProvider(HnbApiClient hnbApiClient, ApplicationEventPublisher eventPublisher) {
+        this.hnbApiClient = hnbApiClient;
+        this.eventPublisher = eventPublisher;
+    }
+
+//    returns the cached medium rate, fetching the rate table synchronously only when the cache is cold
+    public BigDecimal getMediumRate(String currency) {
+        return findExchangeRate(currency)
+                .orElseThrow(() -> unavailable(currency))
+                .getMediumRate();
+    }
+
+//    non-blocking variant of getMediumRate, completes once the HNB API has answered when the cache is cold
+    public CompletableFuture<BigDecimal> getMediumRateAsync(String currency) {
+        CompletableFuture<Void> loaded = tableFetchedAt == null ? refresh() : CompletableFuture.completedFuture(null);
+        return loaded.thenApply(ignored -> getMediumRate(currency));
+    }
+
+//    empty when the currency is not on the HNB rate table
+    public Optional<ExchangeRate> findExchangeRate(String currency) {
+        if (tableFetchedAt == null) {
+            awaitRefresh();
+        } else {
+            revalidate();
+        }
+        return Optional.ofNullable(rates.get(currency));
+    }
+
+    @Scheduled(fixedDelayString = "${hnb.api.rates.refresh-interval:PT24H}",
+            initialDelayString = "${hnb.api.rates.initial-delay:PT0S}")
+    public void refreshAll() {
+        refresh();
+    }
+
+    public void evictAll() {
+        rates.clear();
+        tableFetchedAt = null;
+    }
+
+    private void revalidate() {
+        if (tableFetchedAt.plus(ttl).isBefore(Instant.now())) {
+            refresh();
+        }
+    }
+
+    private void awaitRefresh() {
+        try {
+            refresh().join();
+        } catch (CompletionException ex) {
+            throw ex.getCause() instanceof RuntimeException ? (RuntimeException) ex.getCause() : ex;
+        }
+    }
+
+//    concurrent refreshes share a single in-flight HNB API call
+    private CompletableFuture<Void> refresh() {
+        CompletableFuture<Void> refresh = new CompletableFuture<>();
+        CompletableFuture<Void> inFlight = refreshInFlight.compareAndExchange(null, refresh);
+        if (inFlight != null) {
+            return inFlight;
+        }
+        hnbApiClient.fetchExchangeRates()
+                .thenAccept(this::storeAll)
+                .whenComplete((ignored, ex) -> {
+                    refreshInFlight.compareAndSet(refresh, null);
+                    if (ex != null) {
+                        log.warn("Refreshing the exchange rates failed", ex);
+                        refresh.completeExceptionally(ex);
+                    } else {
+                        refresh.complete(null);
+                    }
+                });
+        return refresh;
+    }
+
+    private void storeAll(List<ExchangeRateDTO> exchangeRates) {
+        if (exchangeRates == null || exchangeRates.isEmpty()) {
+            throw new ExchangeRateUnavailableException("Exchange rates are not available");
+        }
+        Instant fetchedAt = Instant.now();
+        exchangeRates.forEach(exchangeRateDTO -> store(toExchangeRate(exchangeRateDTO, fetchedAt)));
+        tableFetchedAt = fetchedAt;
+    }
+
+//    listeners are notified whenever the medium rate of a currency differs from the previously cached one;
+//    a table answered with an older application date (e.g. by a lagging HNB API node) never replaces a newer rate
+    private void store(ExchangeRate fetched) {
+        ExchangeRate previous = rates.get(fetched.getCurrency());
+        ExchangeRate stored = rates.merge(fetched.getCurrency(), fetched, (cached, latest) ->
+                latest.getApplicationDate().isBefore(cached.getApplicationDate()) ? cached : latest);
+        if (previous == null || previous.getMediumRate().compareTo(stored.getMediumRate()) != 0) {
+            eventPublisher.publishEvent(new ExchangeRateChangedEvent(stored));
+        }
+    }
+
+    private static ExchangeRate toExchangeRate(ExchangeRateDTO exchangeRateDTO, Instant fetchedAt) {
+        return new ExchangeRate(exchangeRateDTO.getCurrency(),
+                LocalDate.parse(exchangeRateDTO.getDateOfAppl(), HNB_DATE_FORMAT),
+                exchangeRateDTO.getUnit() == null ? 1 : Integer.parseInt(exchangeRateDTO.getUnit().trim()),
+                new BigDecimal(exchangeRateDTO.getMediumRate().replace(",", ".")),
+                fetchedAt);
+    }
+
+    private static ExchangeRateUnavailableException unavailable(String currency) {
+        return new ExchangeRateUnavailableException("Exchange rate for currency " + currency + " is not available");
+    }
+}
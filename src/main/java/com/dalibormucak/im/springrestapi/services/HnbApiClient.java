@@ -0,0 +1,145 @@
+package com.dalibormucak.im.springrestapi.services;
+
+import com.dalibormucak.im.springrestapi.exceptions.ExchangeRateUnavailableException;
+import com.dalibormucak.im.springrestapi.models.dtos.ExchangeRateDTO;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+//    non-blocking HNB API client: every call has a timeout, failed calls are retried with exponential backoff
+//    and a circuit breaker stops calling the API while it keeps failing
+@Slf4j
+@Service
+public class HnbApiClient {
+
+    private static final TypeReference<List<ExchangeRateDTO>> EXCHANGE_RATES_TYPE = new TypeReference<>() {
+    };
+    private static final String REQUESTS_METRIC = "hnb.api.requests";
+
+    private final HttpClient httpClient;
+    private final ObjectMapper objectMapper;
+    private final CircuitBreaker circuitBreaker;
+    private final MeterRegistry meterRegistry;
+    @Value("${base.url.hnb.api}")
+    private String HNB_API_BASE_URL;
+    @Value("${hnb.api.read-timeout:PT3S}")
+    private Duration readTimeout;
+    @Value("${hnb.api.retry.max-retries:2}")
+    private int maxRetries;
+    @Value("${hnb.api.retry.initial-backoff:PT0.2S}")
+    private Duration initialBackoff;
+
+    @Autowired
+    public HnbApiClient(HttpClient httpClient, ObjectMapper objectMapper, MeterRegistry meterRegistry,
+                        @Value("${hnb.api.circuit-breaker.failure-threshold:5}") int failureThreshold,
+                        @Value("${hnb.api.circuit-breaker.open-duration:PT30S}") Duration openDuration) {
+        this.httpClient = httpClient;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.circuitBreaker = new CircuitBreaker(failureThreshold, openDuration, Clock.systemUTC());
+    }
+
+//    the rate table of all currencies for the current day
+    public CompletableFuture<List<ExchangeRateDTO>> fetchExchangeRates() {
+        if (!circuitBreaker.tryAcquire()) {
+            return CompletableFuture.failedFuture(
+                    new ExchangeRateUnavailableException("The HNB API circuit breaker is open"));
+        }
+        HttpRequest request = HttpRequest.newBuilder(URI.create(HNB_API_BASE_URL + "/tecajn/v1"))
+                .timeout(readTimeout)
+                .header("Accept", "application/json")
+                .GET()
+                .build();
+        return send(request, 0).whenComplete((rates, ex) -> {
+            if (ex == null) {
+                circuitBreaker.onSuccess();
+            } else {
+                circuitBreaker.onFailure();
+            }
+        });
+    }
+
+//    every attempt is timed on its own, so retries show up as separate requests
+    private CompletableFuture<List<ExchangeRateDTO>> send(HttpRequest request, int retry) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(this::readExchangeRates)
+                .whenComplete((rates, ex) -> sample.stop(meterRegistry.timer(REQUESTS_METRIC, "outcome", outcome(ex))))
+                .handle((rates, ex) -> {
+                    if (ex == null) {
+                        return CompletableFuture.completedFuture(rates);
+                    }
+                    Throwable cause = ex instanceof CompletionException ? ex.getCause() : ex;
+                    if (retry >= maxRetries || !isRetryable(cause)) {
+                        return CompletableFuture.<List<ExchangeRateDTO>>failedFuture(
+                                new ExchangeRateUnavailableException("The HNB API request failed", cause));
+                    }
+                    long backoffMillis = initialBackoff.toMillis() << retry;
+                    log.debug("HNB API request failed, retrying in {} ms", backoffMillis, cause);
+                    Executor delayedExecutor = CompletableFuture.delayedExecutor(backoffMillis, TimeUnit.MILLISECONDS);
+                    return CompletableFuture.runAsync(() -> {
+                    }, delayedExecutor).thenCompose(ignored -> send(request, retry + 1));
+                })
+                .thenCompose(Function.identity());
+    }
+
+    private List<ExchangeRateDTO> readExchangeRates(HttpResponse<byte[]> response) {
+        if (response.statusCode() / 100 != 2) {
+            throw new UnexpectedStatusException(response.statusCode());
+        }
+        try {
+            return objectMapper.readValue(response.body(), EXCHANGE_RATES_TYPE);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static String outcome(Throwable ex) {
+        if (ex == null) {
+            return "SUCCESS";
+        }
+        Throwable cause = ex instanceof CompletionException ? ex.getCause() : ex;
+        if (cause instanceof UnexpectedStatusException) {
+            return ((UnexpectedStatusException) cause).status >= 500 ? "SERVER_ERROR" : "CLIENT_ERROR";
+        }
+        return "UNKNOWN";
+    }
+
+//    client errors will not go away by retrying, unlike I/O errors, timeouts and server errors
+    private static boolean isRetryable(Throwable cause) {
+        if (cause instanceof UnexpectedStatusException) {
+            return ((UnexpectedStatusException) cause).status >= 500;
+        }
+        return cause instanceof IOException;
+    }
+
+    private static class UnexpectedStatusException extends RuntimeException {
+
+        private final int status;
+
+        UnexpectedStatusException(int status) {
+            super("The HNB API responded with status " + status);
+            this.status = status;
+        }
+    }
+}
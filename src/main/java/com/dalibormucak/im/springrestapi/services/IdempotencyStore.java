@@ -0,0 +1,140 @@
+package com.dalibormucak.im.springrestapi.services;
+
+import com.dalibormucak.im.springrestapi.exceptions.BadRequestException;
+import com.dalibormucak.im.springrestapi.exceptions.IdempotencyKeyReusedException;
+import com.dalibormucak.im.springrestapi.exceptions.IdempotentRequestInProgressException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+//    remembers the responses of recent requests sent with an Idempotency-Key header, so that a retried request
+//    is answered from memory without running it again; keys expire after a fixed time and only the most recent
+//    keys are kept, failed requests are forgotten so that they can be retried
+@Service
+public class IdempotencyStore {
+
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+    private static final int MAX_KEY_LENGTH = 255;
+
+    private final ObjectMapper objectMapper;
+    private final Duration ttl;
+    private final Clock clock = Clock.systemUTC();
+//    insertion order is also expiry order, as every key lives for the same time
+    private final LinkedHashMap<String, Entry> entries;
+
+    @Autowired
+    public IdempotencyStore(ObjectMapper objectMapper,
+                            @Value("${idempotency.max-keys:10000}") int maxKeys,
+                            @Value("${idempotency.ttl:PT24H}") Duration ttl) {
+        this.objectMapper = objectMapper;
+        this.ttl = ttl;
+        this.entries = new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxKeys;
+            }
+        };
+    }
+
+//    the operation and the payload are fingerprinted, reusing a key for a different request is rejected
+    public <T> ResponseEntity<T> execute(String key, String operation, Object payload,
+                                         Supplier<ResponseEntity<T>> request) {
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            throw new BadRequestException(
+                    "Idempotency-Key must have between 1 and " + MAX_KEY_LENGTH + " characters");
+        }
+        String fingerprint = fingerprint(operation, payload);
+        Entry entry;
+        synchronized (this) {
+            Instant now = clock.instant();
+            removeExpired(now);
+            Entry existing = entries.get(key);
+            if (existing != null) {
+                return replay(existing, fingerprint);
+            }
+            entry = new Entry(fingerprint, now.plus(ttl));
+            entries.put(key, entry);
+        }
+
+        ResponseEntity<T> response;
+        try {
+            response = request.get();
+        } catch (RuntimeException ex) {
+            synchronized (this) {
+                entries.remove(key, entry);
+            }
+            throw ex;
+        }
+        synchronized (this) {
+            entry.response = response;
+        }
+        return response;
+    }
+
+    public synchronized void evictAll() {
+        entries.clear();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> ResponseEntity<T> replay(Entry entry, String fingerprint) {
+        if (!entry.fingerprint.equals(fingerprint)) {
+            throw new IdempotencyKeyReusedException("Idempotency-Key has already been used for a different request");
+        }
+        if (entry.response == null) {
+            throw new IdempotentRequestInProgressException(
+                    "A request with the same Idempotency-Key is still being processed");
+        }
+        ResponseEntity<T> response = (ResponseEntity<T>) entry.response;
+        return ResponseEntity.status(response.getStatusCode())
+                .headers(response.getHeaders())
+                .header(REPLAYED_HEADER, "true")
+                .body(response.getBody());
+    }
+
+    private void removeExpired(Instant now) {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext() && !iterator.next().expiresAt.isAfter(now)) {
+            iterator.remove();
+        }
+    }
+
+    private String fingerprint(String operation, Object payload) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update((operation + '\n').getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest(objectMapper.writeValueAsBytes(payload)));
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("The request cannot be fingerprinted", ex);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static class Entry {
+
+        private final String fingerprint;
+        private final Instant expiresAt;
+        private ResponseEntity<?> response;
+
+        Entry(String fingerprint, Instant expiresAt) {
+            this.fingerprint = fingerprint;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
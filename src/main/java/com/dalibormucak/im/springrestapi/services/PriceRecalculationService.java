@@ -0,0 +1,108 @@
+package com.dalibormucak.im.springrestapi.services;
+
+import com.dalibormucak.im.springrestapi.models.ExchangeRateChangedEvent;
+import com.dalibormucak.im.springrestapi.models.PriceRecalculation;
+import com.dalibormucak.im.springrestapi.repositories.PriceRecalculationRepository;
+import com.dalibormucak.im.springrestapi.repositories.ProductRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+//    recalculates price_eur of all products when the EUR exchange rate changes; products are updated in chunks
+//    of consecutive ids with one UPDATE statement each and the progress is stored after every chunk,
+//    so a recalculation interrupted by a restart continues after the last processed product
+@Slf4j
+@Service
+@Profile("!reactive")
+public class PriceRecalculationService {
+
+    private static final String EUR = "EUR";
+
+    private final ProductRepository productRepository;
+    private final PriceRecalculationRepository priceRecalculationRepository;
+    private final int chunkSize;
+//    a single worker, so recalculations never run concurrently and a newer rate waits for the current run
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "price-recalculation");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile BigDecimal latestRate;
+
+    @Autowired
+    public PriceRecalculationService(ProductRepository productRepository,
+                                     PriceRecalculationRepository priceRecalculationRepository,
+                                     @Value("${prices.recalculation.chunk-size:1000}") int chunkSize) {
+        this.productRepository = productRepository;
+        this.priceRecalculationRepository = priceRecalculationRepository;
+        this.chunkSize = chunkSize;
+    }
+
+    @EventListener
+    public void onExchangeRateChanged(ExchangeRateChangedEvent event) {
+        if (!EUR.equals(event.getExchangeRate().getCurrency())) {
+            return;
+        }
+        BigDecimal rate = event.getExchangeRate().getMediumRate();
+        latestRate = rate;
+        executor.execute(() -> {
+            try {
+                recalculate(rate);
+            } catch (RuntimeException ex) {
+                log.error("Recalculating the EUR prices with the exchange rate {} failed", rate, ex);
+            }
+        });
+    }
+
+    public Optional<PriceRecalculation> getProgress() {
+        return priceRecalculationRepository.findById(EUR);
+    }
+
+    void recalculate(BigDecimal rate) {
+        PriceRecalculation recalculation = priceRecalculationRepository.findById(EUR)
+                .filter(previous -> previous.getExchange_rate().compareTo(rate) == 0)
+                .orElseGet(() -> PriceRecalculation.start(EUR, rate, Instant.now()));
+        if (recalculation.isFinished()) {
+            return;
+        }
+        log.info("Recalculating the EUR prices with the exchange rate {} after product id {}",
+                rate, recalculation.getLast_product_id());
+
+        Optional<Integer> chunkEndId;
+        while ((chunkEndId = productRepository.findChunkEndId(recalculation.getLast_product_id(), chunkSize))
+                .isPresent()) {
+//            a newer rate has been fetched meanwhile, the recalculation queued for it starts over
+            if (latestRate.compareTo(rate) != 0) {
+                log.info("Recalculating the EUR prices with the exchange rate {} was superseded", rate);
+                return;
+            }
+            int updated = productRepository.recalculatePricesEur(rate, recalculation.getLast_product_id(),
+                    chunkEndId.get());
+            recalculation.setLast_product_id(chunkEndId.get());
+            recalculation.setUpdated_products(recalculation.getUpdated_products() + updated);
+            recalculation = priceRecalculationRepository.save(recalculation);
+            log.debug("Recalculated the EUR prices up to product id {}, {} products updated",
+                    chunkEndId.get(), recalculation.getUpdated_products());
+        }
+
+        recalculation.setFinished_at(Instant.now());
+        priceRecalculationRepository.save(recalculation);
+        log.info("Recalculated the EUR prices with the exchange rate {}, {} products updated",
+                rate, recalculation.getUpdated_products());
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
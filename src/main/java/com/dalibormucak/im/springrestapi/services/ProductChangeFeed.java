@@ -0,0 +1,143 @@
+package com.dalibormucak.im.springrestapi.services;
+
+import com.dalibormucak.im.springrestapi.models.ProductChange;
+import com.dalibormucak.im.springrestapi.models.ProductChangeCursor;
+import com.dalibormucak.im.springrestapi.repositories.ProductChangeRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+//    streams the product changes of the outbox as Server-Sent Events; a single worker polls the outbox
+//    and writes to every stream, streams resumed from an older Last-Event-ID are caught up with reads
+//    of their own until they reach the position shared by the streams that are up to date
+@Slf4j
+@Service
+@Profile("!reactive")
+public class ProductChangeFeed {
+
+    private final ProductChangeRepository productChangeRepository;
+    private final int batchSize;
+    private final Duration pollInterval;
+    private final Duration streamTimeout;
+    private final Duration heartbeatInterval;
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "product-change-feed");
+        thread.setDaemon(true);
+        return thread;
+    });
+//    only used by the worker, null until the first poll
+    private ProductChangeCursor head;
+
+    @Autowired
+    public ProductChangeFeed(ProductChangeRepository productChangeRepository,
+                             @Value("${product-changes.batch-size:500}") int batchSize,
+                             @Value("${product-changes.poll-interval:PT1S}") Duration pollInterval,
+                             @Value("${product-changes.stream-timeout:PT30M}") Duration streamTimeout,
+                             @Value("${product-changes.heartbeat-interval:PT15S}") Duration heartbeatInterval) {
+        this.productChangeRepository = productChangeRepository;
+        this.batchSize = batchSize;
+        this.pollInterval = pollInterval;
+        this.streamTimeout = streamTimeout;
+        this.heartbeatInterval = heartbeatInterval;
+    }
+
+    @PostConstruct
+    void start() {
+        executor.scheduleWithFixedDelay(this::poll, pollInterval.toMillis(), pollInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+//    without a Last-Event-ID the stream starts with the changes published after the subscription
+    public SseEmitter subscribe(String lastEventId) {
+        ProductChangeCursor cursor = lastEventId == null ? null : ProductChangeCursor.decode(lastEventId);
+        SseEmitter emitter = new SseEmitter(streamTimeout.toMillis());
+        Subscription subscription = new Subscription(emitter, cursor);
+        emitter.onCompletion(() -> subscriptions.remove(subscription));
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(ex -> subscriptions.remove(subscription));
+        subscriptions.add(subscription);
+        return emitter;
+    }
+
+    void poll() {
+        try {
+            if (head == null) {
+                head = productChangeRepository.findLastPublishable().orElse(ProductChangeCursor.START);
+            }
+            ProductChangeCursor previousHead = head;
+            List<ProductChange> changes = productChangeRepository.findPublishableAfter(previousHead, batchSize);
+            if (!changes.isEmpty()) {
+                head = ProductChangeCursor.after(changes.get(changes.size() - 1));
+            }
+            for (Subscription subscription : subscriptions) {
+                publish(subscription, previousHead, changes);
+            }
+        } catch (RuntimeException ex) {
+            log.warn("Publishing the product changes failed", ex);
+        }
+    }
+
+    private void publish(Subscription subscription, ProductChangeCursor previousHead, List<ProductChange> changes) {
+        if (subscription.cursor == null) {
+            subscription.cursor = previousHead;
+        }
+        List<ProductChange> pending = subscription.cursor.equals(previousHead) ? changes
+                : productChangeRepository.findPublishableAfter(subscription.cursor, batchSize);
+        Instant now = Instant.now();
+        try {
+            for (ProductChange change : pending) {
+                ProductChangeCursor cursor = ProductChangeCursor.after(change);
+                subscription.emitter.send(SseEmitter.event()
+                        .id(cursor.encode())
+                        .name(change.getType().name().toLowerCase(Locale.ROOT))
+                        .data(change, MediaType.APPLICATION_JSON));
+                subscription.cursor = cursor;
+                subscription.lastSentAt = now;
+            }
+//            comments keep idle connections open and reveal the ones the client has closed
+            if (Duration.between(subscription.lastSentAt, now).compareTo(heartbeatInterval) >= 0) {
+                subscription.emitter.send(SseEmitter.event().comment("heartbeat"));
+                subscription.lastSentAt = now;
+            }
+        } catch (IOException | IllegalStateException ex) {
+            subscriptions.remove(subscription);
+            subscription.emitter.completeWithError(ex);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+        subscriptions.forEach(subscription -> subscription.emitter.complete());
+    }
+
+//    cursor and lastSentAt are only used by the worker
+    private static class Subscription {
+
+        private final SseEmitter emitter;
+        private ProductChangeCursor cursor;
+        private Instant lastSentAt = Instant.EPOCH;
+
+        private Subscription(SseEmitter emitter, ProductChangeCursor cursor) {
+            this.emitter = emitter;
+            this.cursor = cursor;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.dalibormucak.im.springrestapi.services;
+
+import com.dalibormucak.im.springrestapi.models.Product;
+import com.dalibormucak.im.springrestapi.models.ProductExportFormat;
+import com.dalibormucak.im.springrestapi.repositories.ProductRepository;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+//    writes the whole catalogue straight to the response output stream one product at a time,
+//    so memory use does not depend on the number of products
+@Service
+@Profile("!reactive")
+public class ProductExportService {
+
+    private static final String CSV_HEADER = "id,code,name,price_hrk,price_eur,description,is_available";
+
+    private final ProductRepository productRepository;
+    private final ObjectWriter productWriter;
+
+    @Autowired
+    public ProductExportService(ProductRepository productRepository, ObjectMapper objectMapper) {
+        this.productRepository = productRepository;
+        this.productWriter = objectMapper.writerFor(Product.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    @Transactional(readOnly = true)
+    public void exportProducts(ProductExportFormat format, OutputStream outputStream) throws IOException {
+        try (Stream<Product> products = productRepository.streamAll()) {
+            if (format == ProductExportFormat.CSV) {
+                writeCsv(products.iterator(), outputStream);
+            } else {
+                writeNdjson(products.iterator(), outputStream);
+            }
+        }
+    }
+
+    private void writeNdjson(Iterator<Product> products, OutputStream outputStream) throws IOException {
+        try (JsonGenerator generator = productWriter.getFactory().createGenerator(outputStream)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+            while (products.hasNext()) {
+                productWriter.writeValue(generator, products.next());
+                generator.writeRaw('\n');
+            }
+        }
+    }
+
+    private void writeCsv(Iterator<Product> products, OutputStream outputStream) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+        writer.write(CSV_HEADER);
+        writer.write('\n');
+        while (products.hasNext()) {
+            Product product = products.next();
+            writer.write(csvValue(product.getId()) + ',' + csvValue(product.getCode()) + ','
+                    + csvValue(product.getName()) + ',' + csvValue(product.getPrice_hrk()) + ','
+                    + csvValue(product.getPrice_eur()) + ',' + csvValue(product.getDescription()) + ','
+                    + csvValue(product.getIs_available()));
+            writer.write('\n');
+        }
+        writer.flush();
+    }
+
+    private static String csvValue(Object value) {
+        if (value == null) {
+            return "";
+        }
+        String text = value.toString();
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+            return text;
+        }
+        return '"' + text.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,169 @@
+package com.dalibormucak.im.springrestapi.services;
+
+import com.dalibormucak.im.springrestapi.exceptions.BadRequestException;
+import com.dalibormucak.im.springrestapi.models.Product;
+import com.dalibormucak.im.springrestapi.models.ProductMergeResult;
+import com.dalibormucak.im.springrestapi.models.dtos.ProductDTO;
+import com.dalibormucak.im.springrestapi.models.dtos.ProductImportResultDTO;
+import com.dalibormucak.im.springrestapi.repositories.ProductRepository;
+import com.dalibormucak.im.springrestapi.repositories.ProductRepositoryCustom;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.channels.Channels;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+//    imports a CSV catalogue while it is being uploaded: every row is parsed and validated on its own like a ProductDTO,
+//    the valid rows are copied to the database as they are read and merged by code with a single statement,
+//    so neither the file nor its products are ever held in memory as a whole
+@Service
+@Profile("!reactive")
+public class ProductImportService {
+
+    private static final String EUR = "EUR";
+    private static final int DECODER_BUFFER_SIZE = 65536;
+    private static final String MISSING_COLUMNS_MSG = "The CSV header must contain the code, price_hrk and is_available columns";
+    private static final String DUPLICATE_CODE_MSG = "The product code is duplicated in the file";
+
+    private final ProductRepository productRepository;
+    private final ExchangeRateProvider exchangeRateProvider;
+    private final ProgrammaticallyValidatingService validatingService;
+    private final int maxReportedErrors;
+
+    @Autowired
+    public ProductImportService(ProductRepository productRepository, ExchangeRateProvider exchangeRateProvider,
+                                ProgrammaticallyValidatingService validatingService,
+                                @Value("${product-import.max-reported-errors:1000}") int maxReportedErrors) {
+        this.productRepository = productRepository;
+        this.exchangeRateProvider = exchangeRateProvider;
+        this.validatingService = validatingService;
+        this.maxReportedErrors = maxReportedErrors;
+    }
+
+//    the first line is the header naming the columns, in any order; id, price_eur and other columns are ignored,
+//    so an export in the CSV format can be imported again; the whole file is imported in one transaction
+    @Transactional
+    public ProductImportResultDTO importProducts(InputStream csv) throws IOException {
+        BigDecimal exchangeRateEurToKn = exchangeRateProvider.getMediumRate(EUR);
+//        a strict decoder rejects a file that is not UTF-8 instead of replacing the characters it cannot decode
+        CsvRecordReader reader = new CsvRecordReader(Channels.newReader(Channels.newChannel(csv),
+                StandardCharsets.UTF_8.newDecoder(), DECODER_BUFFER_SIZE));
+        RowReport report = new RowReport();
+        ProductMergeResult mergeResult = productRepository.importProducts(writer -> {
+            try {
+                stageRows(reader, exchangeRateEurToKn, writer, report);
+            } catch (CharacterCodingException ex) {
+                throw new BadRequestException("The CSV file must be encoded in UTF-8");
+            }
+        });
+
+        List<ProductImportResultDTO.RejectedRow> errors = new ArrayList<>(report.errors);
+        mergeResult.getDuplicateLines().stream()
+                .limit(maxReportedErrors)
+                .forEach(line -> errors.add(new ProductImportResultDTO.RejectedRow(line, List.of(DUPLICATE_CODE_MSG))));
+        errors.sort(Comparator.comparingLong(ProductImportResultDTO.RejectedRow::getLine));
+        long rejected = report.rejected + mergeResult.getDuplicateLines().size();
+        return new ProductImportResultDTO(report.rows, mergeResult.getCreated(), mergeResult.getUpdated(),
+                report.rows - rejected - mergeResult.getCreated() - mergeResult.getUpdated(), rejected,
+                errors.subList(0, Math.min(errors.size(), maxReportedErrors)));
+    }
+
+    private void stageRows(CsvRecordReader reader, BigDecimal exchangeRateEurToKn,
+                           ProductRepositoryCustom.StagingWriter writer, RowReport report) throws IOException {
+        List<String> header = reader.readRecord();
+        if (header == null) {
+            throw new BadRequestException(MISSING_COLUMNS_MSG);
+        }
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+//            a byte order mark is left at the start of the first column name by the decoder
+            String column = i == 0 && header.get(i).startsWith("\uFEFF") ? header.get(i).substring(1) : header.get(i);
+            columns.putIfAbsent(column.trim().toLowerCase(Locale.ROOT), i);
+        }
+        if (!columns.containsKey("code") || !columns.containsKey("price_hrk") || !columns.containsKey("is_available")) {
+            throw new BadRequestException(MISSING_COLUMNS_MSG);
+        }
+
+        List<String> record;
+        while ((record = reader.readRecord()) != null) {
+            if (record.size() == 1 && record.get(0).isEmpty()) {
+                continue;
+            }
+            report.rows++;
+            ProductDTO productDTO = new ProductDTO();
+            List<String> errors = parseRow(record, header.size(), columns, productDTO);
+            if (errors.isEmpty()) {
+                Product product = productDTO.toProduct();
+                product.setPrice_eur(ProductService.calcPriceInEur(productDTO.getPrice_hrk(), exchangeRateEurToKn));
+                writer.write(reader.getRecordLine(), product);
+            } else {
+                report.rejected++;
+                if (report.errors.size() < maxReportedErrors) {
+                    report.errors.add(new ProductImportResultDTO.RejectedRow(reader.getRecordLine(), errors));
+                }
+            }
+        }
+    }
+
+//    fills the DTO from the row and returns the parsing and validation errors of the row; a price or
+//    availability that cannot be parsed is only reported as such, not also as a missing value
+    private List<String> parseRow(List<String> record, int columnCount, Map<String, Integer> columns,
+                                  ProductDTO productDTO) {
+        if (record.size() != columnCount) {
+            return List.of("The row must have " + columnCount + " values like the header");
+        }
+        List<String> errors = new ArrayList<>();
+        productDTO.setCode(value(record, columns, "code"));
+        productDTO.setName(value(record, columns, "name"));
+        productDTO.setDescription(value(record, columns, "description"));
+        String price = value(record, columns, "price_hrk");
+        if (price != null) {
+            try {
+                productDTO.setPrice_hrk(new BigDecimal(price.trim()));
+            } catch (NumberFormatException ex) {
+                errors.add("The product price must be a number");
+                productDTO.setPrice_hrk(BigDecimal.ONE);
+            }
+        }
+        String isAvailable = value(record, columns, "is_available");
+        if (isAvailable != null) {
+            if (isAvailable.trim().equalsIgnoreCase("true") || isAvailable.trim().equalsIgnoreCase("false")) {
+                productDTO.setIs_available(Boolean.valueOf(isAvailable.trim()));
+            } else {
+                errors.add("Product availability must be true or false");
+                productDTO.setIs_available(Boolean.FALSE);
+            }
+        }
+        errors.addAll(validatingService.getViolationMessages(productDTO));
+        return errors;
+    }
+
+//    an empty value is a missing one, as in the CSV export
+    private static String value(List<String> record, Map<String, Integer> columns, String column) {
+        Integer index = columns.get(column);
+        if (index == null || record.get(index).isEmpty()) {
+            return null;
+        }
+        return record.get(index);
+    }
+
+    private static class RowReport {
+
+        private long rows;
+        private long rejected;
+        private final List<ProductImportResultDTO.RejectedRow> errors = new ArrayList<>();
+    }
+}
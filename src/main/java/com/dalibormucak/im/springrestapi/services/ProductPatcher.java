@@ -0,0 +1,224 @@
+package com.dalibormucak.im.springrestapi.services;
+
+import com.dalibormucak.im.springrestapi.exceptions.BadRequestException;
+import com.dalibormucak.im.springrestapi.models.dtos.JsonPatchOperationDTO;
+import com.dalibormucak.im.springrestapi.models.dtos.ProductDTO;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.github.fge.jackson.JsonNumEquals;
+import com.github.fge.jsonpatch.JsonPatch;
+import com.github.fge.jsonpatch.JsonPatchException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+//    applies RFC 6902 operations directly to the fields of a ProductDTO copy instead of going through
+//    a JsonNode tree; patches touching anything else than the top level product fields (the whole document,
+//    unknown members, malformed operations) are applied to the tree by the json-patch library as before
+@Service
+class ProductPatcher {
+
+//    operations the json-patch library cannot read, e.g. an unknown op or a missing path
+    private static final String INVALID_PATCH_MSG = "The JSON patch is invalid";
+
+    private enum Field {
+        CODE(String.class),
+        NAME(String.class),
+        PRICE_HRK(BigDecimal.class),
+        DESCRIPTION(String.class),
+        IS_AVAILABLE(Boolean.class);
+
+        private final Class<?> type;
+        private final int mask;
+
+        Field(Class<?> type) {
+            this.type = type;
+            this.mask = 1 << ordinal();
+        }
+    }
+
+    private final ObjectMapper objectMapper;
+    private final ObjectReader productDTOReader;
+
+    @Autowired
+    ProductPatcher(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        this.productDTOReader = objectMapper.readerFor(ProductDTO.class)
+                .with(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    }
+
+    public ProductDTO applyPatch(List<JsonPatchOperationDTO> patch, ProductDTO productDTO)
+            throws JsonPatchException, JsonProcessingException {
+        for (JsonPatchOperationDTO operation : patch) {
+            if (!isFieldOperation(operation)) {
+                return applyPatchToTree(patch, productDTO);
+            }
+        }
+
+        ProductDTO patched = new ProductDTO(productDTO.getCode(), productDTO.getName(), productDTO.getPrice_hrk(),
+                productDTO.getDescription(), productDTO.getIs_available());
+//        removed members are missing from the document until they are added again
+        int removedFields = 0;
+        for (JsonPatchOperationDTO operation : patch) {
+            Field path = fieldOf(operation.getPath());
+            switch (operation.getOp()) {
+                case "add":
+                    setValue(patched, path, operation.getValue());
+                    removedFields &= ~path.mask;
+                    break;
+                case "replace":
+                    requirePresent(path, removedFields);
+                    setValue(patched, path, operation.getValue());
+                    break;
+                case "remove":
+                    requirePresent(path, removedFields);
+                    set(patched, path, null);
+                    removedFields |= path.mask;
+                    break;
+                case "test":
+                    requirePresent(path, removedFields);
+                    JsonNode tested = objectMapper.valueToTree(get(patched, path));
+                    if (!JsonNumEquals.getInstance().equivalent(tested, operation.getValue())) {
+                        throw new JsonPatchException("value differs from expectations");
+                    }
+                    break;
+                case "copy":
+                    Field copyFrom = fieldOf(operation.getFrom());
+                    requirePresent(copyFrom, removedFields);
+                    copy(patched, copyFrom, path);
+                    removedFields &= ~path.mask;
+                    break;
+                case "move":
+                    Field moveFrom = fieldOf(operation.getFrom());
+                    requirePresent(moveFrom, removedFields);
+                    if (moveFrom != path) {
+                        copy(patched, moveFrom, path);
+                        set(patched, moveFrom, null);
+                        removedFields = (removedFields | moveFrom.mask) & ~path.mask;
+                    }
+            }
+        }
+        return patched;
+    }
+
+    private ProductDTO applyPatchToTree(List<JsonPatchOperationDTO> patch, ProductDTO productDTO)
+            throws JsonPatchException, JsonProcessingException {
+        JsonPatch jsonPatch;
+        try {
+            jsonPatch = objectMapper.convertValue(patch, JsonPatch.class);
+        } catch (IllegalArgumentException ex) {
+            throw new BadRequestException(INVALID_PATCH_MSG, ex);
+        }
+        JsonNode patched = jsonPatch.apply(objectMapper.valueToTree(productDTO));
+        return productDTOReader.treeToValue(patched, ProductDTO.class);
+    }
+
+    private static boolean isFieldOperation(JsonPatchOperationDTO operation) {
+        if (operation.getOp() == null || fieldOf(operation.getPath()) == null) {
+            return false;
+        }
+        switch (operation.getOp()) {
+            case "add":
+            case "replace":
+            case "test":
+                return operation.getValue() != null;
+            case "remove":
+                return true;
+            case "copy":
+            case "move":
+                return fieldOf(operation.getFrom()) != null;
+            default:
+                return false;
+        }
+    }
+
+    private static Field fieldOf(String pointer) {
+        if (pointer == null) {
+            return null;
+        }
+        switch (pointer) {
+            case "/code":
+                return Field.CODE;
+            case "/name":
+                return Field.NAME;
+            case "/price_hrk":
+                return Field.PRICE_HRK;
+            case "/description":
+                return Field.DESCRIPTION;
+            case "/is_available":
+                return Field.IS_AVAILABLE;
+            default:
+                return null;
+        }
+    }
+
+    private static void requirePresent(Field field, int removedFields) throws JsonPatchException {
+        if ((removedFields & field.mask) != 0) {
+            throw new JsonPatchException("no such path in target JSON document");
+        }
+    }
+
+//    values of another JSON type are converted the same way as when reading the whole document
+    private void setValue(ProductDTO productDTO, Field field, JsonNode value) throws JsonProcessingException {
+        if (value.isNull()) {
+            set(productDTO, field, null);
+        } else if (field == Field.PRICE_HRK) {
+            set(productDTO, field, value.isNumber() ? value.decimalValue()
+                    : objectMapper.treeToValue(value, BigDecimal.class));
+        } else if (field == Field.IS_AVAILABLE) {
+            set(productDTO, field, value.isBoolean() ? value.booleanValue()
+                    : objectMapper.treeToValue(value, Boolean.class));
+        } else {
+            set(productDTO, field, value.isTextual() ? value.textValue()
+                    : objectMapper.treeToValue(value, String.class));
+        }
+    }
+
+    private void copy(ProductDTO productDTO, Field from, Field to) throws JsonProcessingException {
+        Object value = get(productDTO, from);
+        if (value == null || from.type == to.type) {
+            set(productDTO, to, value);
+        } else {
+            setValue(productDTO, to, objectMapper.valueToTree(value));
+        }
+    }
+
+    private static Object get(ProductDTO productDTO, Field field) {
+        switch (field) {
+            case CODE:
+                return productDTO.getCode();
+            case NAME:
+                return productDTO.getName();
+            case PRICE_HRK:
+                return productDTO.getPrice_hrk();
+            case DESCRIPTION:
+                return productDTO.getDescription();
+            default:
+                return productDTO.getIs_available();
+        }
+    }
+
+    private static void set(ProductDTO productDTO, Field field, Object value) {
+        switch (field) {
+            case CODE:
+                productDTO.setCode((String) value);
+                break;
+            case NAME:
+                productDTO.setName((String) value);
+                break;
+            case PRICE_HRK:
+                productDTO.setPrice_hrk((BigDecimal) value);
+                break;
+            case DESCRIPTION:
+                productDTO.setDescription((String) value);
+                break;
+            default:
+                productDTO.setIs_available((Boolean) value);
+        }
+    }
+}
@@ -1,74 +1,234 @@
 package com.dalibormucak.im.springrestapi.services;
 
+import com.dalibormucak.im.springrestapi.exceptions.BadRequestException;
+import com.dalibormucak.im.springrestapi.exceptions.PreconditionFailedException;
+import com.dalibormucak.im.springrestapi.models.ExchangeRate;
 import com.dalibormucak.im.springrestapi.models.Product;
-import com.dalibormucak.im.springrestapi.models.dtos.ExchangeRateDTO;
+import com.dalibormucak.im.springrestapi.models.ProductChange;
+import com.dalibormucak.im.springrestapi.models.ProductCursor;
+import com.dalibormucak.im.springrestapi.models.ProductField;
+import com.dalibormucak.im.springrestapi.models.ProductFilter;
+import com.dalibormucak.im.springrestapi.models.ProductSortField;
+import com.dalibormucak.im.springrestapi.models.dtos.BulkProductResultDTO;
+import com.dalibormucak.im.springrestapi.models.dtos.ConvertedProductDTO;
+import com.dalibormucak.im.springrestapi.models.dtos.JsonPatchOperationDTO;
+import com.dalibormucak.im.springrestapi.models.dtos.ProductLookupResultDTO;
+import com.dalibormucak.im.springrestapi.models.dtos.ProductPageDTO;
 import com.dalibormucak.im.springrestapi.models.dtos.ProductDTO;
+import com.dalibormucak.im.springrestapi.models.dtos.ProductFieldsDTO;
+import com.dalibormucak.im.springrestapi.repositories.ProductChangeRepository;
 import com.dalibormucak.im.springrestapi.repositories.ProductRepository;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.github.fge.jsonpatch.JsonPatch;
 import com.github.fge.jsonpatch.JsonPatchException;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.ParameterizedTypeReference;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.ResponseEntity;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
+@Profile("!reactive")
 public class ProductService {
 
+    private static final String EUR = "EUR";
+
     private final ProductRepository productRepository;
-    private final RestTemplate restTemplate;
+    private final ExchangeRateProvider exchangeRateProvider;
     private final ProgrammaticallyValidatingService validatingService;
-    @Value("${base.url.hnb.api}")
-    private String HNB_API_BASE_URL;
+    private final ProductPatcher productPatcher;
+    private final ProductChangeRepository productChangeRepository;
+    private final ObjectMapper objectMapper;
 
     @Autowired
-    public ProductService(ProductRepository productRepository, RestTemplate restTemplate,
-                          ProgrammaticallyValidatingService validatingService) {
+    public ProductService(ProductRepository productRepository, ExchangeRateProvider exchangeRateProvider,
+                          ProgrammaticallyValidatingService validatingService, ProductPatcher productPatcher,
+                          ProductChangeRepository productChangeRepository, ObjectMapper objectMapper) {
         this.productRepository = productRepository;
-        this.restTemplate = restTemplate;
+        this.exchangeRateProvider = exchangeRateProvider;
         this.validatingService = validatingService;
+        this.productPatcher = productPatcher;
+        this.productChangeRepository = productChangeRepository;
+        this.objectMapper = objectMapper;
     }
 
+    @Transactional
     public Product createProduct(Product product) {
         product.setPrice_eur(calcPriceInEur(product.getPrice_hrk()));
-        return productRepository.save(product);
+        Product createdProduct = productRepository.save(product);
+        productChangeRepository.save(toProductChange(ProductChange.Type.CREATED, createdProduct));
+        return createdProduct;
+    }
+
+//    creates the products whose code is new and updates the ones whose code already exists;
+//    every DTO is validated on its own and all saved products share a single exchange rate lookup
+    @Transactional
+    public List<BulkProductResultDTO> bulkSaveProducts(List<ProductDTO> productDTOs) {
+        List<BulkProductResultDTO> results = new ArrayList<>(productDTOs.size());
+        Map<Integer, ProductDTO> validProductDTOs = new HashMap<>();
+        Set<String> codes = new HashSet<>();
+        for (int index = 0; index < productDTOs.size(); index++) {
+            ProductDTO productDTO = productDTOs.get(index);
+            List<String> errors = validatingService.getViolationMessages(productDTO);
+            if (errors.isEmpty() && productDTO.getCode() != null && !codes.add(productDTO.getCode())) {
+                errors = List.of("The product code is duplicated in the request");
+            }
+            if (errors.isEmpty()) {
+                validProductDTOs.put(index, productDTO);
+            } else {
+                results.add(BulkProductResultDTO.rejected(index, errors));
+            }
+        }
+        if (validProductDTOs.isEmpty()) {
+            return results;
+        }
+
+        Map<String, Product> existingProducts = productRepository.findAllByCodeIn(codes)
+                .stream()
+                .collect(Collectors.toMap(Product::getCode, Function.identity()));
+        BigDecimal exchangeRateEurToKn = exchangeRateProvider.getMediumRate(EUR);
+        List<Product> products = new ArrayList<>(validProductDTOs.size());
+        List<Long> previousVersions = new ArrayList<>(validProductDTOs.size());
+        validProductDTOs.forEach((index, productDTO) -> {
+            Product existingProduct = existingProducts.get(productDTO.getCode());
+            Product product = existingProduct != null ? existingProduct : new Product();
+            previousVersions.add(product.getVersion());
+            applyProductDTO(product, productDTO, exchangeRateEurToKn);
+            products.add(product);
+            results.add(BulkProductResultDTO.saved(index, existingProduct != null
+                    ? BulkProductResultDTO.Status.UPDATED : BulkProductResultDTO.Status.CREATED, product));
+        });
+        productRepository.saveAll(products);
+//        flushed to know which existing products have actually changed, by their versions
+        productRepository.flush();
+        List<ProductChange> changes = new ArrayList<>(products.size());
+        for (int index = 0; index < products.size(); index++) {
+            Product product = products.get(index);
+            Long previousVersion = previousVersions.get(index);
+            if (previousVersion == null) {
+                changes.add(toProductChange(ProductChange.Type.CREATED, product));
+            } else if (!previousVersion.equals(product.getVersion())) {
+                changes.add(toProductChange(ProductChange.Type.UPDATED, product));
+            }
+        }
+        productChangeRepository.saveAll(changes);
+        results.sort((first, second) -> Integer.compare(first.getIndex(), second.getIndex()));
+        return results;
+    }
+
+//    the whole products when fields is null, otherwise only the given fields of the products are read
+    @Transactional(readOnly = true)
+    public List<Product> findAllProducts(Set<ProductField> fields) {
+        return fields == null ? productRepository.findAll() : productRepository.findAllProjected(fields);
+    }
+
+//    one extra product is requested to find out whether a next page exists without counting the rows
+    @Transactional(readOnly = true)
+    public ProductPageDTO<Product> findProductPage(ProductFilter filter, ProductSortField sortField,
+                                                   Sort.Direction direction, String cursor, int pageSize,
+                                                   Set<ProductField> fields) {
+        ProductCursor after = cursor == null ? null : ProductCursor.decode(cursor, sortField, direction);
+        List<Product> products = fields == null
+                ? productRepository.findPage(filter, sortField, direction, after, pageSize + 1)
+                : productRepository.findPageProjected(filter, sortField, direction, after, pageSize + 1, fields);
+        if (products.size() <= pageSize) {
+            return new ProductPageDTO<>(products, null);
+        }
+        List<Product> page = products.subList(0, pageSize);
+        String nextCursor = ProductCursor.after(page.get(pageSize - 1), sortField, direction).encode();
+        return new ProductPageDTO<>(page, nextCursor);
     }
 
-    public List<Product> findAllProducts() {
-        return productRepository.findAll();
+    @Transactional(readOnly = true)
+    public List<Product> searchProducts(String term, int page, int pageSize, Set<ProductField> fields) {
+        return fields == null
+                ? productRepository.search(term.trim(), page * pageSize, pageSize)
+                : productRepository.searchProjected(term.trim(), page * pageSize, pageSize, fields);
     }
 
+    @Transactional(readOnly = true)
     public Product findProductById(Integer productId) throws NoSuchElementException {
         return productRepository.findById(productId).orElseThrow(() ->
                 new NoSuchElementException("Product with id " + productId + " does not exist"));
     }
 
-    public Product updateProduct(Integer productId, ProductDTO productDTO) {
-        Product product = findProductById(productId);
-        product.setCode(productDTO.getCode());
-        product.setName(productDTO.getName());
-        product.setPrice_hrk(productDTO.getPrice_hrk().setScale(2, RoundingMode.HALF_EVEN));
-        product.setPrice_eur(calcPriceInEur(productDTO.getPrice_hrk()));
-        product.setDescription(productDTO.getDescription());
-        product.setIs_available(productDTO.getIs_available());
-        return productRepository.save(product);
+//    all products are read with a single query; the results follow the order of the request
+//    and the ids and codes without a product are reported among them instead of failing the request
+    @Transactional(readOnly = true)
+    public List<ProductLookupResultDTO> findProducts(List<Integer> ids, List<String> codes) {
+        if (ids.isEmpty() && codes.isEmpty()) {
+            throw new BadRequestException("At least one id or code must be provided");
+        }
+        Map<Integer, Product> productsById = new HashMap<>();
+        Map<String, Product> productsByCode = new HashMap<>();
+        productRepository.findAllByIdOrCode(new HashSet<>(ids), new HashSet<>(codes)).forEach(product -> {
+            productsById.put(product.getId(), product);
+            productsByCode.put(product.getCode(), product);
+        });
+        List<ProductLookupResultDTO> results = new ArrayList<>(ids.size() + codes.size());
+        ids.forEach(id -> results.add(ProductLookupResultDTO.byId(id, productsById.get(id))));
+        codes.forEach(code -> results.add(ProductLookupResultDTO.byCode(code, productsByCode.get(code))));
+        return results;
+    }
+
+    @Transactional(readOnly = true)
+    public Product findProductByCode(String code) throws NoSuchElementException {
+        return productRepository.findByCode(code).orElseThrow(() ->
+                new NoSuchElementException("Product with code " + code + " does not exist"));
+    }
+
+//    the product is updated with a single statement, it is only read when the update does not happen
+//    to tell a missing product from a failed precondition
+    @Transactional
+    public Product updateProduct(Integer productId, ProductDTO productDTO, List<Long> acceptedVersions) {
+        Product values = new Product();
+        applyProductDTO(values, productDTO, exchangeRateProvider.getMediumRate(EUR));
+        Product updatedProduct = productRepository.updateById(productId, values, acceptedVersions)
+                .orElseThrow(() -> notModified(productId));
+        productChangeRepository.save(toProductChange(ProductChange.Type.UPDATED, updatedProduct));
+        return updatedProduct;
     }
 
-    public Product patchProduct(Integer productId, JsonPatch productPatch) throws JsonPatchException, JsonProcessingException {
+//    creates the product when the code is new and replaces it otherwise, the returned product
+//    has version 0 only when it has just been created
+    @Transactional
+    public Product upsertProductByCode(String code, ProductDTO productDTO) {
+        if (!code.equals(productDTO.getCode())) {
+            throw new BadRequestException("The product code must match the code in the path");
+        }
+        Product values = new Product();
+        applyProductDTO(values, productDTO, exchangeRateProvider.getMediumRate(EUR));
+        Product product = productRepository.upsertByCode(values);
+        productChangeRepository.save(toProductChange(product.getVersion() == 0
+                ? ProductChange.Type.CREATED : ProductChange.Type.UPDATED, product));
+        return product;
+    }
+
+//    the product stays managed for the whole transaction, dirty checking writes the changed columns on commit
+    @Transactional
+    public Product patchProduct(Integer productId, List<JsonPatchOperationDTO> productPatch,
+                                List<Long> acceptedVersions)
+            throws JsonPatchException, JsonProcessingException {
         Product product = findProductById(productId);
-        ProductDTO productDTO = new ProductDTO(product.getCode(), product.getName(), product.getPrice_hrk(),
-                product.getDescription(), product.getIs_available());
-        ProductDTO patchedProductDTO = applyPatchToProductDTO(productPatch, productDTO);
+        checkVersion(product, acceptedVersions);
+        Long previousVersion = product.getVersion();
+        ProductDTO productDTO = toProductDTO(product);
+        ProductDTO patchedProductDTO = productPatcher.applyPatch(productPatch, productDTO);
         validatingService.validateObject(patchedProductDTO);
         product.setCode(patchedProductDTO.getCode());
         product.setName(patchedProductDTO.getName());
@@ -78,33 +238,114 @@ public class ProductService {
         }
         product.setDescription(patchedProductDTO.getDescription());
         product.setIs_available(patchedProductDTO.getIs_available());
-        return productRepository.save(product);
+//        flushed to get the new version, a patch that changes nothing is not a change
+        productRepository.flush();
+        if (!Objects.equals(previousVersion, product.getVersion())) {
+            productChangeRepository.save(toProductChange(ProductChange.Type.UPDATED, product));
+        }
+        return product;
     }
 
-    public void deleteProduct(Integer productId) {
-        Product targetProduct = findProductById(productId);
-        productRepository.delete(targetProduct);
+//    the rate used to show the prices in another currency, any currency on the HNB rate table is supported
+    public ExchangeRate findExchangeRate(String currency) {
+        String currencyCode = currency.toUpperCase(Locale.ROOT);
+        return exchangeRateProvider.findExchangeRate(currencyCode)
+                .orElseThrow(() -> new BadRequestException("Currency " + currencyCode + " is not supported"));
     }
 
-//    method intended for applying JsonPatch to ProductDTO object
-//    using the com.fasterxml.jackson.databind.JsonNode instance
-    private ProductDTO applyPatchToProductDTO(
-            JsonPatch patch, ProductDTO productDTO) throws JsonPatchException, JsonProcessingException {
-        ObjectMapper objectMapper = new ObjectMapper();
-        JsonNode patched = patch.apply(objectMapper.convertValue(productDTO, JsonNode.class));
-        return objectMapper.treeToValue(patched, ProductDTO.class);
+    public List<ConvertedProductDTO<?>> convertPrices(List<Product> products, ExchangeRate exchangeRate,
+                                                      Set<ProductField> fields) {
+        return products.stream()
+                .map(product -> convertPrice(product, exchangeRate, fields))
+                .collect(Collectors.toList());
     }
 
+//    the whole product or only the given fields of it along with the converted price
+    public ConvertedProductDTO<?> convertPrice(Product product, ExchangeRate exchangeRate, Set<ProductField> fields) {
+        BigDecimal price = calcPrice(product.getPrice_hrk(), exchangeRate);
+        if (fields == null) {
+            return new ConvertedProductDTO<>(product, exchangeRate.getCurrency(), price);
+        }
+        return new ConvertedProductDTO<>(new ProductFieldsDTO(product, fields), exchangeRate.getCurrency(), price);
+    }
 
-//    method which calculates the price in EUR calling the HNB API using RestTemplate
-//    (as opposed to asynchronous WebClient) and returns the BigDecimal result
+    @Transactional
+    public void deleteProduct(Integer productId, List<Long> acceptedVersions) {
+        if (productRepository.deleteVersioned(productId, acceptedVersions) == 0) {
+            throw notModified(productId);
+        }
+        productChangeRepository.save(ProductChange.of(ProductChange.Type.DELETED, productId, null, null));
+    }
+
+//    a conditional write found no row, NoSuchElementException when the product does not exist at all
+    private PreconditionFailedException notModified(Integer productId) {
+        findProductById(productId);
+        return new PreconditionFailedException("Product with id " + productId + " has been modified");
+    }
+
+    @Transactional
+    public void deleteProductByCode(String code) throws NoSuchElementException {
+        Integer productId = productRepository.deleteByCode(code).orElseThrow(() ->
+                new NoSuchElementException("Product with code " + code + " does not exist"));
+        productChangeRepository.save(ProductChange.of(ProductChange.Type.DELETED, productId, null, null));
+    }
+
+//    acceptedVersions come from an If-Match precondition, null means that any version may be modified
+    static void checkVersion(Product product, List<Long> acceptedVersions) {
+        if (acceptedVersions != null
+                && !acceptedVersions.contains(Objects.requireNonNullElse(product.getVersion(), 0L))) {
+            throw new PreconditionFailedException("Product with id " + product.getId() + " has been modified");
+        }
+    }
+
+    static void applyProductDTO(Product product, ProductDTO productDTO, BigDecimal exchangeRateEurToKn) {
+        product.setCode(productDTO.getCode());
+        product.setName(productDTO.getName());
+        product.setPrice_hrk(productDTO.getPrice_hrk().setScale(2, RoundingMode.HALF_EVEN));
+        product.setPrice_eur(calcPriceInEur(productDTO.getPrice_hrk(), exchangeRateEurToKn));
+        product.setDescription(productDTO.getDescription());
+        product.setIs_available(productDTO.getIs_available());
+    }
+
+
+//    method which calculates the price in EUR using the HNB exchange rate cached by the ExchangeRateProvider
+//    and returns the BigDecimal result
     private BigDecimal calcPriceInEur(BigDecimal priceInKn) {
-        ResponseEntity<List<ExchangeRateDTO>> exchangeRateData = restTemplate.exchange(
-                HNB_API_BASE_URL + "/tecajn/v1?valuta=EUR", HttpMethod.GET,
-                null, new ParameterizedTypeReference<>() {
-                });
-        String exchangeRateString = exchangeRateData.getBody().get(0).getMediumRate().replace(",", ".");
-        BigDecimal exchangeRateEurToKn = new BigDecimal(exchangeRateString);
+        return calcPriceInEur(priceInKn, exchangeRateProvider.getMediumRate(EUR));
+    }
+
+//    the outbox row of a change, written in the transaction of the change; the product is serialized
+//    as it is in the responses (a JsonNode tree would drop the trailing zeros of the prices)
+    private ProductChange toProductChange(ProductChange.Type type, Product product) {
+        try {
+            return ProductChange.of(type, product.getId(), product.getVersion(),
+                    objectMapper.writeValueAsString(product));
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("Product with id " + product.getId() + " could not be serialized", ex);
+        }
+    }
+
+    static ProductDTO toProductDTO(Product product) {
+        return new ProductDTO(product.getCode(), product.getName(), product.getPrice_hrk(),
+                product.getDescription(), product.getIs_available());
+    }
+
+    static BigDecimal calcPriceInEur(BigDecimal priceInKn, BigDecimal exchangeRateEurToKn) {
         return priceInKn.divide(exchangeRateEurToKn, 2, RoundingMode.HALF_EVEN);
     }
+
+//    the medium rate is quoted for rate.unit units of the currency, the price is rounded
+//    to the minor unit of the currency (no decimals for JPY, HUF...)
+    static BigDecimal calcPrice(BigDecimal priceInKn, ExchangeRate exchangeRate) {
+        return priceInKn.multiply(BigDecimal.valueOf(exchangeRate.getUnit()))
+                .divide(exchangeRate.getMediumRate(), fractionDigits(exchangeRate.getCurrency()), RoundingMode.HALF_EVEN);
+    }
+
+    private static int fractionDigits(String currency) {
+        try {
+            return Math.max(Currency.getInstance(currency).getDefaultFractionDigits(), 0);
+        } catch (IllegalArgumentException ex) {
+            return 2;
+        }
+    }
 }
@@ -6,7 +6,9 @@ import org.springframework.stereotype.Service;
 import javax.validation.ConstraintViolation;
 import javax.validation.ConstraintViolationException;
 import javax.validation.Validator;
+import java.util.List;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 @Service
 class ProgrammaticallyValidatingService {
@@ -24,4 +26,11 @@ class ProgrammaticallyValidatingService {
             throw new ConstraintViolationException(violations);
         }
     }
+
+    public <T> List<String> getViolationMessages(T object) {
+        return validator.validate(object)
+                .stream()
+                .map(ConstraintViolation::getMessage)
+                .collect(Collectors.toList());
+    }
 }
@@ -0,0 +1,110 @@
+package com.dalibormucak.im.springrestapi.services;
+
+import com.dalibormucak.im.springrestapi.models.Product;
+import com.dalibormucak.im.springrestapi.models.dtos.JsonPatchOperationDTO;
+import com.dalibormucak.im.springrestapi.models.dtos.ProductDTO;
+import com.dalibormucak.im.springrestapi.repositories.ReactiveProductRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+//    non-blocking counterpart of ProductService for the reactive profile; exchange rates come from the same
+//    ExchangeRateProvider, whose HNB API client is already asynchronous
+@Service
+@Profile("reactive")
+public class ReactiveProductService {
+
+    private static final String EUR = "EUR";
+
+    private final ReactiveProductRepository productRepository;
+    private final ExchangeRateProvider exchangeRateProvider;
+    private final ProgrammaticallyValidatingService validatingService;
+    private final ProductPatcher productPatcher;
+
+    @Autowired
+    public ReactiveProductService(ReactiveProductRepository productRepository,
+                                  ExchangeRateProvider exchangeRateProvider,
+                                  ProgrammaticallyValidatingService validatingService,
+                                  ProductPatcher productPatcher) {
+        this.productRepository = productRepository;
+        this.exchangeRateProvider = exchangeRateProvider;
+        this.validatingService = validatingService;
+        this.productPatcher = productPatcher;
+    }
+
+    public Mono<Product> createProduct(Product product) {
+        return getExchangeRateEurToKn()
+                .map(exchangeRateEurToKn -> {
+                    product.setPrice_eur(ProductService.calcPriceInEur(product.getPrice_hrk(), exchangeRateEurToKn));
+                    return product;
+                })
+                .flatMap(productRepository::create);
+    }
+
+    public Flux<Product> findAllProducts() {
+        return productRepository.findAll();
+    }
+
+    public Mono<Product> findProductById(Integer productId) {
+        return productRepository.findById(productId)
+                .switchIfEmpty(Mono.error(() ->
+                        new NoSuchElementException("Product with id " + productId + " does not exist")));
+    }
+
+    public Mono<Product> updateProduct(Integer productId, ProductDTO productDTO, List<Long> acceptedVersions) {
+        return findProductById(productId)
+                .doOnNext(product -> ProductService.checkVersion(product, acceptedVersions))
+                .zipWith(getExchangeRateEurToKn(), (product, exchangeRateEurToKn) -> {
+                    ProductService.applyProductDTO(product, productDTO, exchangeRateEurToKn);
+                    return product;
+                })
+                .flatMap(productRepository::updateVersioned);
+    }
+
+    public Mono<Product> patchProduct(Integer productId, List<JsonPatchOperationDTO> productPatch,
+                                      List<Long> acceptedVersions) {
+        return findProductById(productId)
+                .doOnNext(product -> ProductService.checkVersion(product, acceptedVersions))
+                .flatMap(product -> {
+                    ProductDTO productDTO = ProductService.toProductDTO(product);
+                    return Mono.fromCallable(() -> productPatcher.applyPatch(productPatch, productDTO))
+                            .doOnNext(validatingService::validateObject)
+                            .flatMap(patchedProductDTO -> applyPatchedProductDTO(product, productDTO, patchedProductDTO));
+                })
+                .flatMap(productRepository::updateVersioned);
+    }
+
+    public Mono<Void> deleteProduct(Integer productId, List<Long> acceptedVersions) {
+        return findProductById(productId)
+                .doOnNext(product -> ProductService.checkVersion(product, acceptedVersions))
+                .flatMap(productRepository::deleteVersioned);
+    }
+
+//    the EUR price is only recalculated when the HRK price has changed
+    private Mono<Product> applyPatchedProductDTO(Product product, ProductDTO productDTO,
+                                                 ProductDTO patchedProductDTO) {
+        product.setCode(patchedProductDTO.getCode());
+        product.setName(patchedProductDTO.getName());
+        product.setDescription(patchedProductDTO.getDescription());
+        product.setIs_available(patchedProductDTO.getIs_available());
+        if (patchedProductDTO.getPrice_hrk().compareTo(productDTO.getPrice_hrk()) == 0) {
+            return Mono.just(product);
+        }
+        return getExchangeRateEurToKn().map(exchangeRateEurToKn -> {
+            product.setPrice_hrk(patchedProductDTO.getPrice_hrk().setScale(2, RoundingMode.HALF_EVEN));
+            product.setPrice_eur(ProductService.calcPriceInEur(patchedProductDTO.getPrice_hrk(), exchangeRateEurToKn));
+            return product;
+        });
+    }
+
+    private Mono<BigDecimal> getExchangeRateEurToKn() {
+        return Mono.fromFuture(() -> exchangeRateProvider.getMediumRateAsync(EUR));
+    }
+}
@@ -0,0 +1,21 @@
+-- runs on every start after Hibernate has updated the schema, so every statement has to be idempotent
+
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+ALTER TABLE product ADD COLUMN IF NOT EXISTS search_vector tsvector GENERATED ALWAYS AS (
+    setweight(to_tsvector('simple', coalesce(code, '')), 'A') ||
+    setweight(to_tsvector('simple', coalesce(name, '')), 'A') ||
+    setweight(to_tsvector('simple', coalesce(description, '')), 'B')
+) STORED;
+
+CREATE INDEX IF NOT EXISTS product_search_vector_idx ON product USING GIN (search_vector);
+CREATE INDEX IF NOT EXISTS product_code_trgm_idx ON product USING GIN (code gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS product_name_trgm_idx ON product USING GIN (name gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS product_description_trgm_idx ON product USING GIN (description gin_trgm_ops);
+
+CREATE INDEX IF NOT EXISTS product_change_tx_id_idx ON product_change (tx_id, id);
+
+-- keyset pages sorted by code, name or price read a range of one of these indexes in either direction
+CREATE INDEX IF NOT EXISTS product_code_id_idx ON product (code, id);
+CREATE INDEX IF NOT EXISTS product_name_id_idx ON product (name, id);
+CREATE INDEX IF NOT EXISTS product_price_hrk_id_idx ON product (price_hrk, id);
@@ -1,17 +1,36 @@
 package com.dalibormucak.im.springrestapi;
 
+import com.dalibormucak.im.springrestapi.models.PriceRecalculation;
 import com.dalibormucak.im.springrestapi.models.Product;
+import com.dalibormucak.im.springrestapi.models.ProductChange;
+import com.dalibormucak.im.springrestapi.models.ProductCursor;
+import com.dalibormucak.im.springrestapi.models.ProductField;
+import com.dalibormucak.im.springrestapi.models.ProductFilter;
+import com.dalibormucak.im.springrestapi.models.ProductMergeResult;
+import com.dalibormucak.im.springrestapi.models.ProductSortField;
 import com.dalibormucak.im.springrestapi.models.dtos.ProductDTO;
+import com.dalibormucak.im.springrestapi.repositories.PriceRecalculationRepository;
+import com.dalibormucak.im.springrestapi.repositories.ProductChangeRepository;
 import com.dalibormucak.im.springrestapi.repositories.ProductRepository;
+import com.dalibormucak.im.springrestapi.repositories.ProductRepositoryCustom;
+import com.dalibormucak.im.springrestapi.services.ExchangeRateProvider;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import com.github.tomakehurst.wiremock.WireMockServer;
 import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+import com.github.tomakehurst.wiremock.stubbing.StubMapping;
 import com.jayway.jsonpath.DocumentContext;
 import com.jayway.jsonpath.JsonPath;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.BDDMockito;
 import org.mockito.Mockito;
 import org.mockito.stubbing.Answer;
@@ -21,6 +40,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
@@ -31,13 +51,20 @@ import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.*;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.assertj.core.api.AssertionsForClassTypes.catchThrowable;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 
 @SpringBootTest(classes = SpringRestApi.class)
@@ -48,9 +75,21 @@ class SpringRestApiProductControllerTests {
     @Autowired
     private MockMvc mvc;
 
+    @Autowired
+    private ExchangeRateProvider exchangeRateProvider;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     @MockBean
     private ProductRepository productRepository;
 
+    @MockBean
+    private PriceRecalculationRepository priceRecalculationRepository;
+
+    @MockBean
+    private ProductChangeRepository productChangeRepository;
+
     private static WireMockServer wireMockServer;
 
     @BeforeAll
@@ -63,13 +102,18 @@ class SpringRestApiProductControllerTests {
         wireMockServer.start();
         configureFor("localhost", 7070);
 
-        wireMockServer.stubFor(get(urlEqualTo("/tecajn/v1?valuta=EUR"))
+        wireMockServer.stubFor(get(urlEqualTo("/tecajn/v1"))
                 .willReturn(aResponse()
                         .withStatus(HttpStatus.CREATED.value())
                         .withHeader("Content-Type", "application/json;charset=UTF-8")
                         .withBodyFile("hnb-api-response.json")));
     }
 
+    @BeforeEach
+    void beforeEach() {
+        exchangeRateProvider.evictAll();
+    }
+
     @AfterEach
     void afterEach() {
         wireMockServer.resetRequests();
@@ -101,8 +145,13 @@ class SpringRestApiProductControllerTests {
         MvcResult result = mvc.perform(requestBuilder).andReturn();
 
         //then
-        wireMockServer.verify(getRequestedFor(urlEqualTo("/tecajn/v1?valuta=EUR")));
+        wireMockServer.verify(getRequestedFor(urlEqualTo("/tecajn/v1")));
         Mockito.verify(productRepository, times(1)).save(any(Product.class));
+        ArgumentCaptor<ProductChange> changeCaptor = ArgumentCaptor.forClass(ProductChange.class);
+        Mockito.verify(productChangeRepository, times(1)).save(changeCaptor.capture());
+        assertThat(changeCaptor.getValue().getType()).isEqualTo(ProductChange.Type.CREATED);
+        String changedProductCode = JsonPath.parse(changeCaptor.getValue().getProduct()).read("code");
+        assertThat(changedProductCode).isEqualTo("203V5LSB26");
 
         assertThat(result.getResponse().getStatus()).isEqualTo(201);
 
@@ -115,6 +164,202 @@ class SpringRestApiProductControllerTests {
         assertThat(actualPriceEur.compareTo(BigDecimal.valueOf(132.87)) == 0).isTrue();
     }
 
+    @Test
+    void testCreateProducts_withCachedExchangeRate() throws Exception {
+
+        //given
+        BDDMockito.willAnswer((Answer) invocation -> {
+            Product passedProduct = invocation.getArgument(0);
+            return passedProduct;
+        }).given(productRepository).save(any(Product.class));
+
+        ProductDTO productDTO = new ProductDTO("203V5LSB26", "Monitor Philips", BigDecimal.valueOf(1000.00),
+                "Enjoy vivid LED pictures with this attractive, glossy design display.", true);
+        String productDTO_AsJson = new ObjectMapper().writeValueAsString(productDTO);
+        RequestBuilder requestBuilder = MockMvcRequestBuilders.post("/api/products")
+                .accept(MediaType.APPLICATION_JSON)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(productDTO_AsJson);
+
+        //when
+        MvcResult firstResult = mvc.perform(requestBuilder).andReturn();
+        MvcResult secondResult = mvc.perform(requestBuilder).andReturn();
+
+        //then
+        wireMockServer.verify(1, getRequestedFor(urlEqualTo("/tecajn/v1")));
+        Mockito.verify(productRepository, times(2)).save(any(Product.class));
+
+        assertThat(firstResult.getResponse().getStatus()).isEqualTo(201);
+        assertThat(secondResult.getResponse().getStatus()).isEqualTo(201);
+
+        BigDecimal actualPriceEur = JsonPath.parse(secondResult.getResponse().getContentAsString())
+                .read("price_eur", BigDecimal.class);
+        assertThat(actualPriceEur.compareTo(BigDecimal.valueOf(132.87)) == 0).isTrue();
+    }
+
+    @Test
+    void testCreateProduct_retriedWithIdempotencyKey() throws Exception {
+
+        //given
+        BDDMockito.willAnswer((Answer) invocation -> {
+            Product passedProduct = invocation.getArgument(0);
+            return passedProduct.toBuilder().id(7).build();
+        }).given(productRepository).save(any(Product.class));
+
+        ProductDTO productDTO = new ProductDTO("203V5LSB26", "Monitor Philips", BigDecimal.valueOf(1000.00),
+                "Enjoy vivid LED pictures with this attractive, glossy design display.", true);
+        ProductDTO otherProductDTO = new ProductDTO("203V5LSB27", "Monitor Philips", BigDecimal.valueOf(1000.00),
+                "Enjoy vivid LED pictures with this attractive, glossy design display.", true);
+        ObjectMapper objectMapper = new ObjectMapper();
+
+        //when
+        MvcResult firstResult = mvc.perform(MockMvcRequestBuilders.post("/api/products")
+                .header("Idempotency-Key", "3f7b1c0e-retry")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(productDTO))).andReturn();
+        MvcResult retriedResult = mvc.perform(MockMvcRequestBuilders.post("/api/products")
+                .header("Idempotency-Key", "3f7b1c0e-retry")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(productDTO))).andReturn();
+        MvcResult reusedKeyResult = mvc.perform(MockMvcRequestBuilders.post("/api/products")
+                .header("Idempotency-Key", "3f7b1c0e-retry")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(otherProductDTO))).andReturn();
+
+        //then
+        wireMockServer.verify(1, getRequestedFor(urlEqualTo("/tecajn/v1")));
+        Mockito.verify(productRepository, times(1)).save(any(Product.class));
+
+        assertThat(firstResult.getResponse().getStatus()).isEqualTo(201);
+        assertThat(retriedResult.getResponse().getStatus()).isEqualTo(201);
+        assertThat(retriedResult.getResponse().getHeader("Idempotent-Replayed")).isEqualTo("true");
+        assertThat(retriedResult.getResponse().getContentAsString())
+                .isEqualTo(firstResult.getResponse().getContentAsString());
+        Integer actualId = JsonPath.parse(retriedResult.getResponse().getContentAsString()).read("id");
+        assertThat(actualId).isEqualTo(7);
+
+        assertThat(reusedKeyResult.getResponse().getStatus()).isEqualTo(422);
+        String actualError = JsonPath.parse(reusedKeyResult.getResponse().getContentAsString()).read("errors[0]");
+        assertThat(actualError).isEqualTo("Idempotency-Key has already been used for a different request");
+    }
+
+    @Test
+    void testRecalculatePricesEur_whenExchangeRateChanges() {
+
+        //given
+        BDDMockito.given(productRepository.findChunkEndId(eq(0), anyInt())).willReturn(Optional.of(50));
+        BDDMockito.given(productRepository.findChunkEndId(eq(50), anyInt())).willReturn(Optional.empty());
+        BDDMockito.given(productRepository.recalculatePricesEur(any(BigDecimal.class), eq(0), eq(50)))
+                .willReturn(48);
+        BDDMockito.willAnswer((Answer) invocation -> invocation.getArgument(0))
+                .given(priceRecalculationRepository).save(any(PriceRecalculation.class));
+
+        //when
+        exchangeRateProvider.getMediumRate("EUR");
+
+        //then
+        Mockito.verify(productRepository, timeout(2000))
+                .recalculatePricesEur(new BigDecimal("7.526206"), 0, 50);
+        ArgumentCaptor<PriceRecalculation> recalculationCaptor = ArgumentCaptor.forClass(PriceRecalculation.class);
+        Mockito.verify(priceRecalculationRepository, timeout(2000).times(2)).save(recalculationCaptor.capture());
+        PriceRecalculation finishedRecalculation = recalculationCaptor.getValue();
+        assertThat(finishedRecalculation.isFinished()).isTrue();
+        assertThat(finishedRecalculation.getLast_product_id()).isEqualTo(50);
+        assertThat(finishedRecalculation.getUpdated_products()).isEqualTo(48L);
+    }
+
+    @Test
+    void testBulkSaveProducts() throws Exception {
+
+        //given
+        BDDMockito.willAnswer((Answer) invocation -> {
+            List<Product> existingProducts = new ArrayList<>();
+            existingProducts.add(Product.builder()
+                    .id(4)
+                    .code("485T5LSB26")
+                    .name("Monitor Asus")
+                    .price_hrk(BigDecimal.valueOf(1200.00))
+                    .price_eur(BigDecimal.valueOf(159.44))
+                    .is_available(false)
+                    .build());
+            return existingProducts;
+        }).given(productRepository).findAllByCodeIn(any());
+
+        BDDMockito.willAnswer((Answer) invocation -> invocation.getArgument(0))
+                .given(productRepository).saveAll(any());
+
+        List<ProductDTO> productDTOs = new ArrayList<>();
+        productDTOs.add(new ProductDTO("203V5LSB26", "Monitor Philips", BigDecimal.valueOf(1000.00),
+                "Enjoy vivid LED pictures with this attractive, glossy design display.", true));
+        productDTOs.add(new ProductDTO("203.V5@B20", "Monitor Philips", BigDecimal.valueOf(1000.00),
+                "Enjoy vivid LED pictures with this attractive, glossy design display.", true));
+        productDTOs.add(new ProductDTO("485T5LSB26", "Monitor Asus", BigDecimal.valueOf(900.00),
+                "HDR technology delivers exceptional onscreen clarity and detail.", true));
+        RequestBuilder requestBuilder = MockMvcRequestBuilders.post("/api/products/bulk")
+                .accept(MediaType.APPLICATION_JSON)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(new ObjectMapper().writeValueAsString(productDTOs));
+
+        //when
+        MvcResult result = mvc.perform(requestBuilder).andReturn();
+
+        //then
+        wireMockServer.verify(1, getRequestedFor(urlEqualTo("/tecajn/v1")));
+        Mockito.verify(productRepository, times(1)).findAllByCodeIn(any());
+        Mockito.verify(productRepository, times(1)).saveAll(any());
+        Mockito.verify(productRepository, times(0)).save(any(Product.class));
+
+        assertThat(result.getResponse().getStatus()).isEqualTo(200);
+
+        DocumentContext jsonResponse = JsonPath.parse(result.getResponse().getContentAsString());
+        List<String> statuses = jsonResponse.read("$[*].status");
+        assertThat(statuses).isEqualTo(List.of("created", "rejected", "updated"));
+        String rejectionError = jsonResponse.read("$[1].errors[0]");
+        assertThat(rejectionError).isEqualTo("The product code is invalid");
+        Integer updatedId = jsonResponse.read("$[2].product.id");
+        BigDecimal updatedPriceEur = jsonResponse.read("$[2].product.price_eur", BigDecimal.class);
+        assertThat(updatedId).isEqualTo(4);
+        assertThat(updatedPriceEur.compareTo(BigDecimal.valueOf(119.58)) == 0).isTrue();
+    }
+
+    @Test
+    void testCreateProduct_withUnavailableExchangeRate() throws Exception {
+
+        //given
+        StubMapping failingHnbApi = wireMockServer.stubFor(get(urlEqualTo("/tecajn/v1"))
+                .atPriority(1)
+                .willReturn(aResponse().withStatus(HttpStatus.SERVICE_UNAVAILABLE.value())));
+        Timer failedHnbApiRequests = meterRegistry.timer("hnb.api.requests", "outcome", "SERVER_ERROR");
+        Counter unavailableExchangeRateErrors = meterRegistry.counter("product.api.errors",
+                "handler", "exchangeRateUnavailableException", "status", "503");
+        long failedHnbApiRequestsBefore = failedHnbApiRequests.count();
+        double unavailableExchangeRateErrorsBefore = unavailableExchangeRateErrors.count();
+
+        ProductDTO productDTO = new ProductDTO("203V5LSB26", "Monitor Philips", BigDecimal.valueOf(1000.00),
+                "Enjoy vivid LED pictures with this attractive, glossy design display.", true);
+        RequestBuilder requestBuilder = MockMvcRequestBuilders.post("/api/products")
+                .accept(MediaType.APPLICATION_JSON)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(new ObjectMapper().writeValueAsString(productDTO));
+
+        //when
+        MvcResult result = mvc.perform(requestBuilder).andReturn();
+        wireMockServer.removeStub(failingHnbApi);
+
+        //then
+        wireMockServer.verify(3, getRequestedFor(urlEqualTo("/tecajn/v1")));
+        Mockito.verify(productRepository, times(0)).save(any(Product.class));
+
+        assertThat(result.getResponse().getStatus()).isEqualTo(503);
+
+        DocumentContext jsonResponse = JsonPath.parse(result.getResponse().getContentAsString());
+        List<String> errors = jsonResponse.read("errors");
+        assertThat(errors.get(0)).isEqualTo("Exchange rate is currently not available");
+
+        assertThat(failedHnbApiRequests.count() - failedHnbApiRequestsBefore).isEqualTo(3L);
+        assertThat(unavailableExchangeRateErrors.count() - unavailableExchangeRateErrorsBefore).isEqualTo(1.0);
+    }
+
     @Test
     void testCreateProduct_withInvalidCode() throws Exception {
 
@@ -178,6 +423,97 @@ class SpringRestApiProductControllerTests {
         assertThat(actualIsAvailable).isFalse();
     }
 
+    @Test
+    void testGetProduct_inOtherCurrency() throws Exception {
+
+        //given
+        BDDMockito.willAnswer((Answer) invocation -> {
+            Integer passedId = invocation.getArgument(0);
+            Product product = Product.builder()
+                    .id(passedId)
+                    .code("485T5LSB26")
+                    .name("Monitor Asus")
+                    .price_hrk(BigDecimal.valueOf(1200.00))
+                    .price_eur(BigDecimal.valueOf(159.44))
+                    .description("HDR technology delivers exceptional onscreen clarity and detail.")
+                    .is_available(false).build();
+            return Optional.of(product);
+        }).given(productRepository).findById(anyInt());
+
+        //when
+        MvcResult jpyResult = mvc.perform(MockMvcRequestBuilders.get("/api/products/9?currency=JPY")).andReturn();
+        MvcResult usdResult = mvc.perform(MockMvcRequestBuilders.get("/api/products/9?currency=usd")).andReturn();
+
+        //then
+        wireMockServer.verify(1, getRequestedFor(urlEqualTo("/tecajn/v1")));
+
+        assertThat(jpyResult.getResponse().getStatus()).isEqualTo(200);
+        assertThat(usdResult.getResponse().getStatus()).isEqualTo(200);
+        assertThat(jpyResult.getResponse().getHeader("ETag")).isNotEqualTo(usdResult.getResponse().getHeader("ETag"));
+
+        DocumentContext jpyResponse = JsonPath.parse(jpyResult.getResponse().getContentAsString());
+        Integer actualId = jpyResponse.read("id");
+        String actualCurrency = jpyResponse.read("currency");
+        BigDecimal actualPriceJpy = jpyResponse.read("price", BigDecimal.class);
+        assertThat(actualId).isEqualTo(9);
+        assertThat(actualCurrency).isEqualTo("JPY");
+        assertThat(actualPriceJpy.compareTo(BigDecimal.valueOf(21600)) == 0).isTrue();
+
+        BigDecimal actualPriceUsd = JsonPath.parse(usdResult.getResponse().getContentAsString())
+                .read("price", BigDecimal.class);
+        assertThat(actualPriceUsd.compareTo(new BigDecimal("166.59")) == 0).isTrue();
+    }
+
+    @Test
+    void testGetAllProducts_inUnsupportedCurrency() throws Exception {
+
+        //given
+        BDDMockito.given(productRepository.findAll()).willReturn(new ArrayList<>());
+
+        RequestBuilder requestBuilder = MockMvcRequestBuilders.get("/api/products?currency=XYZ");
+
+        //when
+        MvcResult result = mvc.perform(requestBuilder).andReturn();
+
+        //then
+        assertThat(result.getResponse().getStatus()).isEqualTo(400);
+
+        String actualError = JsonPath.parse(result.getResponse().getContentAsString()).read("errors[0]");
+        assertThat(actualError).isEqualTo("Currency XYZ is not supported");
+    }
+
+    @Test
+    void testGetProduct_notModified() throws Exception {
+
+        //given
+        BDDMockito.willAnswer((Answer) invocation -> {
+            Integer passedId = invocation.getArgument(0);
+            Product product = Product.builder()
+                    .id(passedId)
+                    .code("485T5LSB26")
+                    .name("Monitor Asus")
+                    .price_hrk(BigDecimal.valueOf(1200.00))
+                    .price_eur(BigDecimal.valueOf(159.44))
+                    .is_available(false)
+                    .version(3L)
+                    .build();
+            return Optional.of(product);
+        }).given(productRepository).findById(anyInt());
+
+        MvcResult firstResult = mvc.perform(MockMvcRequestBuilders.get("/api/products/9")).andReturn();
+        String eTag = firstResult.getResponse().getHeader("ETag");
+        RequestBuilder requestBuilder = MockMvcRequestBuilders.get("/api/products/9")
+                .header("If-None-Match", eTag);
+
+        //when
+        MvcResult result = mvc.perform(requestBuilder).andReturn();
+
+        //then
+        assertThat(eTag).isEqualTo("W/\"9.3\"");
+        assertThat(result.getResponse().getStatus()).isEqualTo(304);
+        assertThat(result.getResponse().getContentAsString()).isEmpty();
+    }
+
     @Test
     void testGet_nonExistentProduct() throws Exception {
 
@@ -197,6 +533,117 @@ class SpringRestApiProductControllerTests {
         assertThat(result.getResponse().getStatus()).isEqualTo(404);
     }
 
+    @Test
+    void testGetProductByCode_nonExistent() throws Exception {
+
+        //given
+        BDDMockito.given(productRepository.findByCode("203V5LSB26")).willReturn(Optional.empty());
+
+        RequestBuilder requestBuilder = MockMvcRequestBuilders.get("/api/products/code/203V5LSB26");
+
+        //when
+        MvcResult result = mvc.perform(requestBuilder).andReturn();
+
+        //then
+        Mockito.verify(productRepository, times(1)).findByCode("203V5LSB26");
+
+        assertThat(result.getResponse().getStatus()).isEqualTo(404);
+
+        DocumentContext jsonResponse = JsonPath.parse(result.getResponse().getContentAsString());
+        List<String> errors = jsonResponse.read("errors");
+        assertThat(errors.get(0)).isEqualTo("Product with code 203V5LSB26 does not exist");
+    }
+
+    @Test
+    void testGetProductsBatch() throws Exception {
+
+        //given
+        BDDMockito.willAnswer((Answer) invocation -> {
+            List<Product> products = new ArrayList<>();
+            products.add(Product.builder().id(1).code("203V5LSB26").name("Monitor Philips")
+                    .price_hrk(BigDecimal.valueOf(1000.00)).price_eur(BigDecimal.valueOf(132.87))
+                    .is_available(true).build());
+            products.add(Product.builder().id(3).code("485T5LSB26").name("Monitor Samsung")
+                    .price_hrk(BigDecimal.valueOf(1500.00)).price_eur(BigDecimal.valueOf(199.30))
+                    .is_available(false).build());
+            return products;
+        }).given(productRepository).findAllByIdOrCode(any(), any());
+
+        RequestBuilder requestBuilder = MockMvcRequestBuilders.get("/api/products/batch")
+                .param("ids", "3,99,1")
+                .param("codes", "203V5LSB26,AEZAKMI007");
+
+        //when
+        MvcResult result = mvc.perform(requestBuilder).andReturn();
+
+        //then
+        Mockito.verify(productRepository, times(1)).findAllByIdOrCode(any(), any());
+        Mockito.verify(productRepository, times(0)).findById(anyInt());
+
+        assertThat(result.getResponse().getStatus()).isEqualTo(200);
+
+        DocumentContext jsonResponse = JsonPath.parse(result.getResponse().getContentAsString());
+        List<String> statuses = jsonResponse.read("$[*].status");
+        assertThat(statuses).isEqualTo(List.of("found", "not_found", "found", "found", "not_found"));
+        Integer firstProductId = jsonResponse.read("$[0].product.id");
+        assertThat(firstProductId).isEqualTo(3);
+        String codeProductName = jsonResponse.read("$[3].product.name");
+        assertThat(codeProductName).isEqualTo("Monitor Philips");
+        String missingError = jsonResponse.read("$[1].errors[0]");
+        assertThat(missingError).isEqualTo("Product with id 99 does not exist");
+    }
+
+    @Test
+    void testImportProducts() throws Exception {
+
+        //given
+        List<Long> stagedLines = new ArrayList<>();
+        List<Product> stagedProducts = new ArrayList<>();
+        BDDMockito.willAnswer((Answer) invocation -> {
+            ProductRepositoryCustom.ImportSource source = invocation.getArgument(0);
+            source.writeTo((line, product) -> {
+                stagedLines.add(line);
+                stagedProducts.add(product);
+            });
+            return new ProductMergeResult(1, 1, List.of(5L));
+        }).given(productRepository).importProducts(any());
+
+        String csv = "code,name,price_hrk,description,is_available\n" +
+                "203V5LSB26,Monitor Philips,1000.00,\"Enjoy vivid LED pictures, glossy design\",true\n" +
+                "invalid,Monitor,abc,,true\n" +
+                "485T5LSB26,Monitor Samsung,1500,,false\n" +
+                "203V5LSB26,Monitor Philips 27,900.00,,true\n";
+        RequestBuilder requestBuilder = MockMvcRequestBuilders.post("/api/products/import")
+                .contentType("text/csv")
+                .content(csv);
+
+        //when
+        MvcResult result = mvc.perform(requestBuilder).andReturn();
+
+        //then
+        Mockito.verify(productRepository, times(1)).importProducts(any());
+        Mockito.verify(productRepository, times(0)).save(any(Product.class));
+
+        assertThat(result.getResponse().getStatus()).isEqualTo(200);
+        assertThat(stagedLines).isEqualTo(List.of(2L, 4L, 5L));
+        assertThat(stagedProducts.get(0).getPrice_eur()).isEqualTo(new BigDecimal("132.87"));
+        assertThat(stagedProducts.get(0).getDescription()).isEqualTo("Enjoy vivid LED pictures, glossy design");
+        assertThat(stagedProducts.get(1).getPrice_hrk()).isEqualTo(new BigDecimal("1500.00"));
+
+        DocumentContext jsonResponse = JsonPath.parse(result.getResponse().getContentAsString());
+        Integer rows = jsonResponse.read("$.rows");
+        assertThat(rows).isEqualTo(4);
+        Integer rejected = jsonResponse.read("$.rejected");
+        assertThat(rejected).isEqualTo(2);
+        List<Integer> errorLines = jsonResponse.read("$.errors[*].line");
+        assertThat(errorLines).isEqualTo(List.of(3, 5));
+        List<String> invalidRowErrors = jsonResponse.read("$.errors[0].errors");
+        assertThat(invalidRowErrors).isEqualTo(List.of("The product price must be a number",
+                "The product code is invalid"));
+        String duplicateError = jsonResponse.read("$.errors[1].errors[0]");
+        assertThat(duplicateError).isEqualTo("The product code is duplicated in the file");
+    }
+
     @Test
     void testGetAllProducts() throws Exception {
 
@@ -241,27 +688,336 @@ class SpringRestApiProductControllerTests {
     }
 
     @Test
-    void testUpdateProduct() throws Exception {
+    void testGetAllProducts_asSmile() throws Exception {
 
         //given
         BDDMockito.willAnswer((Answer) invocation -> {
-            Integer passedId = invocation.getArgument(0);
-            Product product = Product.builder()
-                    .id(passedId)
-                    .code("203V5LSB26")
+            List<Product> allProducts = new ArrayList<>();
+            allProducts.add(Product.builder()
+                    .id(1).code("203V5LSB26")
                     .name("Monitor Philips")
-                    .price_hrk(BigDecimal.valueOf(1000.00))
-                    .price_eur(BigDecimal.valueOf(132.87))
+                    .price_hrk(new BigDecimal("1000.00"))
+                    .price_eur(new BigDecimal("132.87"))
                     .description("Enjoy vivid LED pictures with this attractive, glossy design display.")
                     .is_available(true)
-                    .build();
-            return Optional.of(product);
-        }).given(productRepository).findById(anyInt());
+                    .build());
+            return allProducts;
+        }).given(productRepository).findAll();
+
+        RequestBuilder requestBuilder = MockMvcRequestBuilders.get("/api/products")
+                .accept("application/x-jackson-smile");
 
+        //when
+        MvcResult result = mvc.perform(requestBuilder).andReturn();
+
+        //then
+        assertThat(result.getResponse().getStatus()).isEqualTo(200);
+        assertThat(result.getResponse().getContentType()).isEqualTo("application/x-jackson-smile");
+        assertThat(result.getResponse().getHeader("ETag")).startsWith("W/");
+
+        JsonNode products = new ObjectMapper(new SmileFactory()).readTree(result.getResponse().getContentAsByteArray());
+        assertThat(products.size()).isEqualTo(1);
+        assertThat(products.get(0).get("code").textValue()).isEqualTo("203V5LSB26");
+        assertThat(products.get(0).get("price_eur").decimalValue()).isEqualTo(new BigDecimal("132.87"));
+    }
+
+    @Test
+    void testGetAllProducts_withFields() throws Exception {
+
+        //given
+        BDDMockito.given(productRepository.findAllProjected(any())).willReturn(List.of(Product.builder()
+                .id(1)
+                .code("203V5LSB26")
+                .price_eur(new BigDecimal("132.87"))
+                .is_available(true)
+                .version(2L)
+                .build()));
+
+        RequestBuilder requestBuilder = MockMvcRequestBuilders.get("/api/products?fields=is_available,code,price_eur");
+
+        //when
+        MvcResult result = mvc.perform(requestBuilder).andReturn();
+
+        //then
+        Mockito.verify(productRepository, times(1)).findAllProjected(
+                EnumSet.of(ProductField.CODE, ProductField.PRICE_EUR, ProductField.IS_AVAILABLE));
+        Mockito.verify(productRepository, never()).findAll();
+
+        assertThat(result.getResponse().getStatus()).isEqualTo(200);
+        assertThat(result.getResponse().getHeader("ETag")).startsWith("W/");
+        assertThat(result.getResponse().getContentAsString())
+                .isEqualTo("[{\"code\":\"203V5LSB26\",\"price_eur\":132.87,\"is_available\":true}]");
+    }
+
+    @Test
+    void testGetProductPage() throws Exception {
+
+        //given
         BDDMockito.willAnswer((Answer) invocation -> {
-            Product passedProduct = invocation.getArgument(0);
-            return passedProduct;
-        }).given(productRepository).save(any(Product.class));
+            List<Product> products = new ArrayList<>();
+            for (int id = 1; id <= 3; id++) {
+                products.add(Product.builder()
+                        .id(id)
+                        .code("485T5LSB2" + id)
+                        .name("Monitor Asus " + id)
+                        .price_hrk(BigDecimal.valueOf(1200.00))
+                        .price_eur(BigDecimal.valueOf(159.44))
+                        .is_available(true)
+                        .build());
+            }
+            return products;
+        }).given(productRepository).findPage(any(), any(), any(), any(), anyInt());
+
+        RequestBuilder firstPageRequest = MockMvcRequestBuilders.get("/api/products/page")
+                .param("size", "2")
+                .param("sort", "code")
+                .param("is_available", "true");
+
+        //when
+        MvcResult firstPage = mvc.perform(firstPageRequest).andReturn();
+        String nextCursor = JsonPath.parse(firstPage.getResponse().getContentAsString()).read("next_cursor");
+        MvcResult secondPage = mvc.perform(MockMvcRequestBuilders.get("/api/products/page")
+                .param("size", "2")
+                .param("sort", "code")
+                .param("is_available", "true")
+                .param("cursor", nextCursor)).andReturn();
+
+        //then
+        ArgumentCaptor<ProductCursor> cursorCaptor = ArgumentCaptor.forClass(ProductCursor.class);
+        ArgumentCaptor<ProductFilter> filterCaptor = ArgumentCaptor.forClass(ProductFilter.class);
+        Mockito.verify(productRepository, times(2)).findPage(filterCaptor.capture(), eq(ProductSortField.CODE),
+                eq(Sort.Direction.ASC), cursorCaptor.capture(), eq(3));
+        assertThat(filterCaptor.getValue().getIsAvailable()).isTrue();
+        assertThat(cursorCaptor.getAllValues().get(0)).isNull();
+        assertThat(cursorCaptor.getAllValues().get(1).getId()).isEqualTo(2);
+        assertThat(cursorCaptor.getAllValues().get(1).getSortValue()).isEqualTo("485T5LSB22");
+
+        assertThat(firstPage.getResponse().getStatus()).isEqualTo(200);
+        assertThat(secondPage.getResponse().getStatus()).isEqualTo(200);
+
+        DocumentContext jsonResponse = JsonPath.parse(firstPage.getResponse().getContentAsString());
+        int numOfProducts = jsonResponse.read("$.products.length()");
+        assertThat(numOfProducts).isEqualTo(2);
+    }
+
+    @Test
+    void testGetProductPage_withInvalidCursor() throws Exception {
+
+        //given
+        RequestBuilder requestBuilder = MockMvcRequestBuilders.get("/api/products/page")
+                .param("sort", "name")
+                .param("cursor", "bm90LWEtY3Vyc29y");
+
+        //when
+        MvcResult result = mvc.perform(requestBuilder).andReturn();
+
+        //then
+        Mockito.verify(productRepository, times(0)).findPage(any(), any(), any(), any(), anyInt());
+
+        assertThat(result.getResponse().getStatus()).isEqualTo(400);
+
+        DocumentContext jsonResponse = JsonPath.parse(result.getResponse().getContentAsString());
+        List<String> errors = jsonResponse.read("errors");
+        assertThat(errors.get(0)).isEqualTo("The cursor is invalid");
+    }
+
+    @Test
+    void testGetProductPage_withTooLargePageSize() throws Exception {
+
+        //given
+        RequestBuilder requestBuilder = MockMvcRequestBuilders.get("/api/products/page")
+                .param("size", "1000");
+
+        //when
+        MvcResult result = mvc.perform(requestBuilder).andReturn();
+
+        //then
+        assertThat(result.getResponse().getStatus()).isEqualTo(400);
+
+        DocumentContext jsonResponse = JsonPath.parse(result.getResponse().getContentAsString());
+        List<String> errors = jsonResponse.read("errors");
+        assertThat(errors.get(0)).isEqualTo("Page size cannot exceed 100");
+    }
+
+    @Test
+    void testGetProductPage_withUnknownSortField() throws Exception {
+
+        //given
+        RequestBuilder requestBuilder = MockMvcRequestBuilders.get("/api/products/page")
+                .param("sort", "price_eur");
+
+        //when
+        MvcResult unknownSortResult = mvc.perform(requestBuilder).andReturn();
+        MvcResult unknownOrderResult = mvc.perform(MockMvcRequestBuilders.get("/api/products/page")
+                .param("order", "upwards")).andReturn();
+
+        //then
+        Mockito.verify(productRepository, times(0)).findPage(any(), any(), any(), any(), anyInt());
+
+        assertThat(unknownSortResult.getResponse().getStatus()).isEqualTo(400);
+        assertThat(unknownOrderResult.getResponse().getStatus()).isEqualTo(400);
+
+        List<String> unknownSortErrors = JsonPath.parse(unknownSortResult.getResponse().getContentAsString())
+                .read("errors");
+        assertThat(unknownSortErrors.get(0)).isEqualTo("Products cannot be sorted by price_eur");
+        List<String> unknownOrderErrors = JsonPath.parse(unknownOrderResult.getResponse().getContentAsString())
+                .read("errors");
+        assertThat(unknownOrderErrors.get(0)).isEqualTo("Order must be asc or desc");
+    }
+
+//    only the exceptions thrown for invalid requests are answered with 400, any other IllegalArgumentException
+//    is a server error whose message is not returned to the client
+    @Test
+    void testGetProductPage_withFailingRepository() {
+
+        //given
+        BDDMockito.given(productRepository.findPage(any(), any(), any(), any(), anyInt()))
+                .willThrow(new IllegalArgumentException("Parameter value [1] did not match expected type"));
+
+        RequestBuilder requestBuilder = MockMvcRequestBuilders.get("/api/products/page");
+
+        //when
+        Throwable thrown = catchThrowable(() -> mvc.perform(requestBuilder));
+
+        //then
+        assertThat(thrown).hasRootCauseInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testSearchProducts() throws Exception {
+
+        //given
+        BDDMockito.willAnswer((Answer) invocation -> {
+            List<Product> products = new ArrayList<>();
+            products.add(Product.builder()
+                    .id(4)
+                    .code("485T5LSB21")
+                    .name("Monitor Asus")
+                    .price_hrk(BigDecimal.valueOf(1200.00))
+                    .price_eur(BigDecimal.valueOf(159.44))
+                    .is_available(true)
+                    .build());
+            return products;
+        }).given(productRepository).search(any(), anyInt(), anyInt());
+
+        RequestBuilder requestBuilder = MockMvcRequestBuilders.get("/api/products/search")
+                .param("q", " monitor as ")
+                .param("page", "2")
+                .param("size", "10");
+
+        //when
+        MvcResult result = mvc.perform(requestBuilder).andReturn();
+
+        //then
+        Mockito.verify(productRepository, times(1)).search(eq("monitor as"), eq(20), eq(10));
+
+        assertThat(result.getResponse().getStatus()).isEqualTo(200);
+
+        DocumentContext jsonResponse = JsonPath.parse(result.getResponse().getContentAsString());
+        int numOfProducts = jsonResponse.read("$.length()");
+        assertThat(numOfProducts).isEqualTo(1);
+    }
+
+    @Test
+    void testSearchProducts_withTooShortTerm() throws Exception {
+
+        //given
+        RequestBuilder requestBuilder = MockMvcRequestBuilders.get("/api/products/search")
+                .param("q", "mo");
+
+        //when
+        MvcResult result = mvc.perform(requestBuilder).andReturn();
+
+        //then
+        Mockito.verify(productRepository, times(0)).search(any(), anyInt(), anyInt());
+
+        assertThat(result.getResponse().getStatus()).isEqualTo(400);
+
+        DocumentContext jsonResponse = JsonPath.parse(result.getResponse().getContentAsString());
+        List<String> errors = jsonResponse.read("errors");
+        assertThat(errors.get(0)).isEqualTo("Search term must have between 3 and 64 characters");
+    }
+
+    @Test
+    void testExportProducts_asNdjson() throws Exception {
+
+        //given
+        BDDMockito.willAnswer((Answer) invocation -> Stream.of(
+                Product.builder()
+                        .id(0)
+                        .code("485T5LSB26")
+                        .name("Monitor Asus")
+                        .price_hrk(BigDecimal.valueOf(1200.00))
+                        .price_eur(BigDecimal.valueOf(159.44))
+                        .description("HDR technology delivers exceptional onscreen clarity and detail.")
+                        .is_available(false)
+                        .build(),
+                Product.builder()
+                        .id(1)
+                        .code("203V5LSB26")
+                        .name("Monitor Philips")
+                        .price_hrk(BigDecimal.valueOf(1000.00))
+                        .price_eur(BigDecimal.valueOf(132.87))
+                        .description("Enjoy vivid LED pictures with this attractive, glossy design display.")
+                        .is_available(true)
+                        .build())).given(productRepository).streamAll();
+
+        MvcResult asyncResult = mvc.perform(MockMvcRequestBuilders.get("/api/products/export")).andReturn();
+
+        //when
+        MvcResult result = mvc.perform(MockMvcRequestBuilders.asyncDispatch(asyncResult)).andReturn();
+
+        //then
+        Mockito.verify(productRepository, times(1)).streamAll();
+
+        assertThat(result.getResponse().getStatus()).isEqualTo(200);
+        assertThat(result.getResponse().getContentType()).isEqualTo("application/x-ndjson");
+
+        String[] lines = result.getResponse().getContentAsString().split("\n");
+        assertThat(lines.length).isEqualTo(2);
+        String secondCode = JsonPath.parse(lines[1]).read("code");
+        assertThat(secondCode).isEqualTo("203V5LSB26");
+    }
+
+    @Test
+    void testExportProducts_asCsv() throws Exception {
+
+        //given
+        BDDMockito.willAnswer((Answer) invocation -> Stream.of(
+                Product.builder()
+                        .id(1)
+                        .code("203V5LSB26")
+                        .name("Monitor Philips")
+                        .price_hrk(BigDecimal.valueOf(1000.00))
+                        .price_eur(BigDecimal.valueOf(132.87))
+                        .description("Enjoy vivid LED pictures with this attractive, glossy design display.")
+                        .is_available(true)
+                        .build())).given(productRepository).streamAll();
+
+        MvcResult asyncResult = mvc.perform(MockMvcRequestBuilders.get("/api/products/export")
+                .param("format", "csv")).andReturn();
+
+        //when
+        MvcResult result = mvc.perform(MockMvcRequestBuilders.asyncDispatch(asyncResult)).andReturn();
+
+        //then
+        assertThat(result.getResponse().getStatus()).isEqualTo(200);
+
+        String[] lines = result.getResponse().getContentAsString().split("\n");
+        assertThat(lines[0]).isEqualTo("id,code,name,price_hrk,price_eur,description,is_available");
+        assertThat(lines[1]).isEqualTo("1,203V5LSB26,Monitor Philips,1000.0,132.87,"
+                + "\"Enjoy vivid LED pictures with this attractive, glossy design display.\",true");
+    }
+
+    @Test
+    void testUpdateProduct() throws Exception {
+
+        //given
+        BDDMockito.willAnswer((Answer) invocation -> {
+            Integer passedId = invocation.getArgument(0);
+            Product passedValues = invocation.getArgument(1);
+            return Optional.of(passedValues.toBuilder().id(passedId).version(1L).build());
+        }).given(productRepository).updateById(anyInt(), any(Product.class), isNull());
 
         ProductDTO productDTO = new ProductDTO("AEZAKMI007", "Monitor Philips 20inch", BigDecimal.valueOf(900.00),
                 "Enjoy vivid LED pictures with this attractive design display.", true);
@@ -275,11 +1031,12 @@ class SpringRestApiProductControllerTests {
         MvcResult result = mvc.perform(requestBuilder).andReturn();
 
         //then
-        wireMockServer.verify(getRequestedFor(urlEqualTo("/tecajn/v1?valuta=EUR")));
-        Mockito.verify(productRepository, times(1)).findById(anyInt());
-        Mockito.verify(productRepository, times(1)).save(any(Product.class));
+        wireMockServer.verify(getRequestedFor(urlEqualTo("/tecajn/v1")));
+        Mockito.verify(productRepository, times(1)).updateById(anyInt(), any(Product.class), isNull());
+        Mockito.verify(productRepository, times(0)).findById(anyInt());
 
         assertThat(result.getResponse().getStatus()).isEqualTo(200);
+        assertThat(result.getResponse().getHeader("ETag")).isEqualTo("\"1.1\"");
 
         DocumentContext jsonResponse = JsonPath.parse(result.getResponse().getContentAsString());
         String actualCode = jsonResponse.read("code");
@@ -293,6 +1050,62 @@ class SpringRestApiProductControllerTests {
     @Test
     void testUpdateProduct_withNonUniqueCode() throws Exception {
 
+        //given
+        BDDMockito.willAnswer((Answer) invocation -> {
+            throw new PSQLException(new ServerErrorMessage("ERROR: duplicate key value violates unique constraint"));
+        }).given(productRepository).updateById(anyInt(), any(Product.class), isNull());
+
+        ProductDTO productDTO = new ProductDTO("485T5LSB26", "Monitor Philips 20inch", BigDecimal.valueOf(1100.00),
+                "Enjoy vivid LED pictures with this attractive design display.", true);
+        String productDTO_AsJson = new ObjectMapper().writeValueAsString(productDTO);
+        RequestBuilder requestBuilder = MockMvcRequestBuilders.put("/api/products/1")
+                .accept(MediaType.APPLICATION_JSON)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(productDTO_AsJson);
+
+        //when
+        MvcResult result = mvc.perform(requestBuilder).andReturn();
+
+        //then
+        assertThat(result.getResponse().getStatus()).isEqualTo(500);
+
+        DocumentContext jsonResponse = JsonPath.parse(result.getResponse().getContentAsString());
+        List<String> errors = jsonResponse.read("errors");
+        String errorMsg = errors.get(0);
+        assertThat(errorMsg).isEqualTo("Database error");
+    }
+
+    @Test
+    void testUpdateProduct_withWeakIfMatchOfGet() throws Exception {
+
+        //given
+        BDDMockito.willAnswer((Answer) invocation -> {
+            Integer passedId = invocation.getArgument(0);
+            Product passedValues = invocation.getArgument(1);
+            return Optional.of(passedValues.toBuilder().id(passedId).version(5L).build());
+        }).given(productRepository).updateById(anyInt(), any(Product.class), eq(List.of(4L)));
+
+        ProductDTO productDTO = new ProductDTO("AEZAKMI007", "Monitor Philips 20inch", BigDecimal.valueOf(900.00),
+                "Enjoy vivid LED pictures with this attractive design display.", true);
+        RequestBuilder requestBuilder = MockMvcRequestBuilders.put("/api/products/1")
+                .accept(MediaType.APPLICATION_JSON)
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("If-Match", "W/\"1.4\"")
+                .content(new ObjectMapper().writeValueAsString(productDTO));
+
+        //when
+        MvcResult result = mvc.perform(requestBuilder).andReturn();
+
+        //then
+        Mockito.verify(productRepository, times(1)).updateById(anyInt(), any(Product.class), eq(List.of(4L)));
+
+        assertThat(result.getResponse().getStatus()).isEqualTo(200);
+        assertThat(result.getResponse().getHeader("ETag")).isEqualTo("\"1.5\"");
+    }
+
+    @Test
+    void testUpdateProduct_withOutdatedIfMatch() throws Exception {
+
         //given
         BDDMockito.willAnswer((Answer) invocation -> {
             Integer passedId = invocation.getArgument(0);
@@ -302,34 +1115,68 @@ class SpringRestApiProductControllerTests {
                     .name("Monitor Philips")
                     .price_hrk(BigDecimal.valueOf(1000.00))
                     .price_eur(BigDecimal.valueOf(132.87))
-                    .description("Enjoy vivid LED pictures with this attractive, glossy design display.")
                     .is_available(true)
+                    .version(5L)
                     .build();
             return Optional.of(product);
         }).given(productRepository).findById(anyInt());
 
-        BDDMockito.willAnswer((Answer) invocation -> {
-            throw new PSQLException(new ServerErrorMessage("ERROR: duplicate key value violates unique constraint"));
-        }).given(productRepository).save(any(Product.class));
+        BDDMockito.given(productRepository.updateById(anyInt(), any(Product.class), eq(List.of(4L))))
+                .willReturn(Optional.empty());
 
-        ProductDTO productDTO = new ProductDTO("485T5LSB26", "Monitor Philips 20inch", BigDecimal.valueOf(1100.00),
+        ProductDTO productDTO = new ProductDTO("AEZAKMI007", "Monitor Philips 20inch", BigDecimal.valueOf(900.00),
                 "Enjoy vivid LED pictures with this attractive design display.", true);
-        String productDTO_AsJson = new ObjectMapper().writeValueAsString(productDTO);
         RequestBuilder requestBuilder = MockMvcRequestBuilders.put("/api/products/1")
                 .accept(MediaType.APPLICATION_JSON)
                 .contentType(MediaType.APPLICATION_JSON)
-                .content(productDTO_AsJson);
+                .header("If-Match", "\"1.4\"")
+                .content(new ObjectMapper().writeValueAsString(productDTO));
 
         //when
         MvcResult result = mvc.perform(requestBuilder).andReturn();
 
         //then
-        assertThat(result.getResponse().getStatus()).isEqualTo(500);
+        Mockito.verify(productRepository, times(1)).updateById(anyInt(), any(Product.class), eq(List.of(4L)));
+        Mockito.verify(productRepository, times(1)).findById(anyInt());
 
-        DocumentContext jsonResponse = JsonPath.parse(result.getResponse().getContentAsString());
-        List<String> errors = jsonResponse.read("errors");
-        String errorMsg = errors.get(0);
-        assertThat(errorMsg).isEqualTo("Database error");
+        assertThat(result.getResponse().getStatus()).isEqualTo(412);
+    }
+
+    @Test
+    void testUpsertProductByCode() throws Exception {
+
+        //given
+        List<Long> versions = new ArrayList<>(List.of(0L, 1L));
+        BDDMockito.willAnswer((Answer) invocation -> {
+            Product passedValues = invocation.getArgument(0);
+            return passedValues.toBuilder().id(7).version(versions.remove(0)).build();
+        }).given(productRepository).upsertByCode(any(Product.class));
+
+        ProductDTO productDTO = new ProductDTO("AEZAKMI007", "Monitor Philips 20inch", BigDecimal.valueOf(900.00),
+                "Enjoy vivid LED pictures with this attractive design display.", true);
+        String productDTO_AsJson = new ObjectMapper().writeValueAsString(productDTO);
+
+        //when
+        MvcResult createResult = mvc.perform(MockMvcRequestBuilders.put("/api/products/code/AEZAKMI007")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(productDTO_AsJson)).andReturn();
+        MvcResult updateResult = mvc.perform(MockMvcRequestBuilders.put("/api/products/code/AEZAKMI007")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(productDTO_AsJson)).andReturn();
+        MvcResult mismatchResult = mvc.perform(MockMvcRequestBuilders.put("/api/products/code/AEZAKMI008")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(productDTO_AsJson)).andReturn();
+
+        //then
+        ArgumentCaptor<Product> productCaptor = ArgumentCaptor.forClass(Product.class);
+        Mockito.verify(productRepository, times(2)).upsertByCode(productCaptor.capture());
+        assertThat(productCaptor.getValue().getPrice_eur().compareTo(BigDecimal.valueOf(119.58)) == 0).isTrue();
+
+        assertThat(createResult.getResponse().getStatus()).isEqualTo(201);
+        assertThat(createResult.getResponse().getHeader("ETag")).isEqualTo("\"7.0\"");
+        assertThat(updateResult.getResponse().getStatus()).isEqualTo(200);
+        assertThat(updateResult.getResponse().getHeader("ETag")).isEqualTo("\"7.1\"");
+        assertThat(mismatchResult.getResponse().getStatus()).isEqualTo(400);
     }
 
     @Test
@@ -350,11 +1197,6 @@ class SpringRestApiProductControllerTests {
             return Optional.of(product);
         }).given(productRepository).findById(anyInt());
 
-        BDDMockito.willAnswer((Answer) invocation -> {
-            Product passedProduct = invocation.getArgument(0);
-            return passedProduct;
-        }).given(productRepository).save(any(Product.class));
-
         RequestBuilder requestBuilder = MockMvcRequestBuilders.patch("/api/products/1")
                 .accept("application/json-patch+json")
                 .contentType("application/json-patch+json")
@@ -364,9 +1206,10 @@ class SpringRestApiProductControllerTests {
         MvcResult result = mvc.perform(requestBuilder).andReturn();
 
         //then
-        wireMockServer.verify(getRequestedFor(urlEqualTo("/tecajn/v1?valuta=EUR")));
+        wireMockServer.verify(getRequestedFor(urlEqualTo("/tecajn/v1")));
         Mockito.verify(productRepository, times(1)).findById(anyInt());
-        Mockito.verify(productRepository, times(1)).save(any(Product.class));
+        Mockito.verify(productRepository, times(0)).save(any(Product.class));
+        Mockito.verify(productRepository, times(0)).updateById(anyInt(), any(Product.class), any());
 
         assertThat(result.getResponse().getStatus()).isEqualTo(200);
 
@@ -420,7 +1263,7 @@ class SpringRestApiProductControllerTests {
     }
 
     @Test
-    void testDeleteProduct() throws Exception {
+    void testPatchProduct_withFailedTestOperation() throws Exception {
 
         //given
         BDDMockito.willAnswer((Answer) invocation -> {
@@ -437,7 +1280,30 @@ class SpringRestApiProductControllerTests {
             return Optional.of(product);
         }).given(productRepository).findById(anyInt());
 
-        BDDMockito.willDoNothing().given(productRepository).delete(any(Product.class));
+        RequestBuilder requestBuilder = MockMvcRequestBuilders.patch("/api/products/1")
+                .accept("application/json-patch+json")
+                .contentType("application/json-patch+json")
+                .content("[{ \"op\": \"replace\", \"path\": \"/price_hrk\", \"value\": 800.00 }," +
+                        "{ \"op\": \"test\", \"path\": \"/is_available\", \"value\": false }]");
+
+        //when
+        MvcResult result = mvc.perform(requestBuilder).andReturn();
+
+        //then
+        Mockito.verify(productRepository, times(0)).save(any(Product.class));
+
+        assertThat(result.getResponse().getStatus()).isEqualTo(500);
+
+        DocumentContext jsonResponse = JsonPath.parse(result.getResponse().getContentAsString());
+        List<String> errors = jsonResponse.read("errors");
+        assertThat(errors.get(0)).isEqualTo("JSON processing error");
+    }
+
+    @Test
+    void testDeleteProduct() throws Exception {
+
+        //given
+        BDDMockito.given(productRepository.deleteVersioned(anyInt(), isNull())).willReturn(1);
 
         RequestBuilder requestBuilder = MockMvcRequestBuilders.delete("/api/products/9");
 
@@ -445,8 +1311,9 @@ class SpringRestApiProductControllerTests {
         MvcResult result = mvc.perform(requestBuilder).andReturn();
 
         //then
-        Mockito.verify(productRepository, times(1)).findById(anyInt());
-        Mockito.verify(productRepository, times(1)).delete(any(Product.class));
+        Mockito.verify(productRepository, times(1)).deleteVersioned(anyInt(), isNull());
+        Mockito.verify(productRepository, times(0)).findById(anyInt());
+        Mockito.verify(productRepository, times(0)).delete(any(Product.class));
 
         assertThat(result.getResponse().getStatus()).isEqualTo(200);
     }
@@ -455,22 +1322,44 @@ class SpringRestApiProductControllerTests {
     void testDelete_nonExistentProduct() throws Exception {
 
         //given
+        BDDMockito.given(productRepository.deleteVersioned(anyInt(), isNull())).willReturn(0);
+
         BDDMockito.willAnswer((Answer) invocation -> {
             return Optional.empty();
         }).given(productRepository).findById(anyInt());
 
-        BDDMockito.willDoNothing().given(productRepository).delete(any(Product.class));
-
         RequestBuilder requestBuilder = MockMvcRequestBuilders.delete("/api/products/11");
 
         //when
         MvcResult result = mvc.perform(requestBuilder).andReturn();
 
         //then
+        Mockito.verify(productRepository, times(1)).deleteVersioned(anyInt(), isNull());
         Mockito.verify(productRepository, times(1)).findById(anyInt());
 
         assertThat(result.getResponse().getStatus()).isEqualTo(404);
     }
 
+    @Test
+    void testDeleteProductByCode() throws Exception {
 
+        //given
+        BDDMockito.given(productRepository.deleteByCode("203V5LSB26")).willReturn(Optional.of(9));
+        BDDMockito.given(productRepository.deleteByCode("485T5LSB26")).willReturn(Optional.empty());
+
+        //when
+        MvcResult result = mvc.perform(MockMvcRequestBuilders.delete("/api/products/code/203V5LSB26")).andReturn();
+        MvcResult missingResult = mvc.perform(MockMvcRequestBuilders.delete("/api/products/code/485T5LSB26"))
+                .andReturn();
+
+        //then
+        Mockito.verify(productRepository, times(0)).findByCode(any());
+        ArgumentCaptor<ProductChange> changeCaptor = ArgumentCaptor.forClass(ProductChange.class);
+        Mockito.verify(productChangeRepository, times(1)).save(changeCaptor.capture());
+        assertThat(changeCaptor.getValue().getType()).isEqualTo(ProductChange.Type.DELETED);
+        assertThat(changeCaptor.getValue().getProduct_id()).isEqualTo(9);
+
+        assertThat(result.getResponse().getStatus()).isEqualTo(200);
+        assertThat(missingResult.getResponse().getStatus()).isEqualTo(404);
+    }
 }
@@ -0,0 +1,181 @@
+package com.dalibormucak.im.springrestapi;
+
+import com.dalibormucak.im.springrestapi.models.Product;
+import com.dalibormucak.im.springrestapi.models.dtos.ProductDTO;
+import com.dalibormucak.im.springrestapi.repositories.ReactiveProductRepository;
+import com.dalibormucak.im.springrestapi.services.ExchangeRateProvider;
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.BDDMockito;
+import org.mockito.Mockito;
+import org.mockito.stubbing.Answer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.times;
+
+@SpringBootTest(classes = SpringRestApi.class)
+@AutoConfigureWebTestClient
+@ActiveProfiles({"reactive", "test"})
+class SpringRestApiReactiveProductControllerTests {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Autowired
+    private ExchangeRateProvider exchangeRateProvider;
+
+    @MockBean
+    private ReactiveProductRepository productRepository;
+
+    private static WireMockServer wireMockServer;
+
+    @BeforeAll
+    static void beforeAll() {
+        wireMockServer = new WireMockServer(
+                new WireMockConfiguration()
+                        .options()
+                        .usingFilesUnderDirectory("src/test/resources")
+                        .port(7070));
+        wireMockServer.start();
+        configureFor("localhost", 7070);
+
+        wireMockServer.stubFor(get(urlEqualTo("/tecajn/v1"))
+                .willReturn(aResponse()
+                        .withStatus(HttpStatus.CREATED.value())
+                        .withHeader("Content-Type", "application/json;charset=UTF-8")
+                        .withBodyFile("hnb-api-response.json")));
+    }
+
+    @BeforeEach
+    void beforeEach() {
+        exchangeRateProvider.evictAll();
+    }
+
+    @AfterEach
+    void afterEach() {
+        wireMockServer.resetRequests();
+    }
+
+    @AfterAll
+    static void afterAll() {
+        wireMockServer.stop();
+    }
+
+    @Test
+    void testCreateProduct() {
+
+        //given
+        BDDMockito.willAnswer((Answer) invocation -> {
+            Product passedProduct = invocation.getArgument(0);
+            return Mono.just(passedProduct);
+        }).given(productRepository).create(any(Product.class));
+
+        ProductDTO productDTO = new ProductDTO("203V5LSB26", "Monitor Philips", BigDecimal.valueOf(1000.00),
+                "Enjoy vivid LED pictures with this attractive, glossy design display.", true);
+
+        //when
+        WebTestClient.ResponseSpec response = webTestClient.post()
+                .uri("/api/products")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(productDTO)
+                .exchange();
+
+        //then
+        response.expectStatus().isCreated()
+                .expectBody()
+                .jsonPath("$.code").isEqualTo("203V5LSB26")
+                .jsonPath("$.price_eur").isEqualTo(132.87);
+
+        wireMockServer.verify(getRequestedFor(urlEqualTo("/tecajn/v1")));
+        Mockito.verify(productRepository, times(1)).create(any(Product.class));
+    }
+
+    @Test
+    void testGet_nonExistentProduct() {
+
+        //given
+        BDDMockito.given(productRepository.findById(anyInt())).willReturn(Mono.empty());
+
+        //when
+        WebTestClient.ResponseSpec response = webTestClient.get()
+                .uri("/api/products/10")
+                .exchange();
+
+        //then
+        response.expectStatus().isNotFound()
+                .expectBody()
+                .jsonPath("$.errors[0]").isEqualTo("Product with id 10 does not exist");
+    }
+
+    @Test
+    void testUpdateProduct_withIfMatch() {
+
+        //given
+        BDDMockito.willAnswer((Answer) invocation -> {
+            Integer passedId = invocation.getArgument(0);
+            return Mono.just(Product.builder()
+                    .id(passedId)
+                    .code("203V5LSB26")
+                    .name("Monitor Philips")
+                    .price_hrk(BigDecimal.valueOf(1000.00))
+                    .price_eur(BigDecimal.valueOf(132.87))
+                    .is_available(true)
+                    .version(3L)
+                    .build());
+        }).given(productRepository).findById(anyInt());
+
+        BDDMockito.willAnswer((Answer) invocation -> {
+            Product passedProduct = invocation.getArgument(0);
+            return Mono.just(passedProduct.toBuilder().version(passedProduct.getVersion() + 1).build());
+        }).given(productRepository).updateVersioned(any(Product.class));
+
+        ProductDTO productDTO = new ProductDTO("203V5LSB26", "Monitor Philips", BigDecimal.valueOf(900.00),
+                "Enjoy vivid LED pictures with this attractive, glossy design display.", true);
+
+        //when
+        WebTestClient.ResponseSpec response = webTestClient.put()
+                .uri("/api/products/1")
+                .header(HttpHeaders.IF_MATCH, "\"1.3\"")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(productDTO)
+                .exchange();
+        WebTestClient.ResponseSpec staleResponse = webTestClient.put()
+                .uri("/api/products/1")
+                .header(HttpHeaders.IF_MATCH, "\"1.2\"")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(productDTO)
+                .exchange();
+
+        //then
+        response.expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"1.4\"")
+                .expectBody()
+                .jsonPath("$.price_eur").isEqualTo(119.58);
+        staleResponse.expectStatus().isEqualTo(HttpStatus.PRECONDITION_FAILED);
+
+        ArgumentCaptor<Product> productCaptor = ArgumentCaptor.forClass(Product.class);
+        Mockito.verify(productRepository, times(1)).updateVersioned(productCaptor.capture());
+        assertThat(productCaptor.getValue().getVersion()).isEqualTo(3L);
+    }
+}
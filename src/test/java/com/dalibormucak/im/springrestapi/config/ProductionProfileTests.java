@@ -0,0 +1,59 @@
+package com.dalibormucak.im.springrestapi.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+//    the whole application with the production profile on an embedded PostgreSQL; the HNB API is never called,
+//    and the context is closed with the class so that the change feed stops polling the closed database
+@SpringBootTest(properties = "hnb.api.rates.initial-delay=PT24H")
+@ActiveProfiles("production")
+@DirtiesContext
+class ProductionProfileTests {
+
+    private static EmbeddedPostgres embeddedPostgres;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @DynamicPropertySource
+    static void databaseProperties(DynamicPropertyRegistry registry) throws IOException {
+        if (embeddedPostgres == null) {
+            embeddedPostgres = EmbeddedPostgres.start();
+        }
+        registry.add("spring.datasource.url", () -> embeddedPostgres.getJdbcUrl("postgres", "postgres"));
+        registry.add("spring.datasource.username", () -> "postgres");
+        registry.add("spring.datasource.password", () -> "postgres");
+    }
+
+    @AfterAll
+    static void afterAll() throws IOException {
+        embeddedPostgres.close();
+    }
+
+    @Test
+    void testSecondLevelCacheMetrics_published() {
+
+        //then
+        for (String result : new String[]{"hit", "miss"}) {
+            assertThat(meterRegistry.find("hibernate.second.level.cache.requests")
+                    .tags("region", "product", "result", result).functionCounter()).isNotNull();
+            assertThat(meterRegistry.find("hibernate.cache.natural.id.requests")
+                    .tag("result", result).functionCounter()).isNotNull();
+        }
+        assertThat(meterRegistry.find("hibernate.second.level.cache.puts").tag("region", "product")
+                .functionCounter()).isNotNull();
+        assertThat(meterRegistry.find("hibernate.cache.natural.id.puts").functionCounter()).isNotNull();
+    }
+}
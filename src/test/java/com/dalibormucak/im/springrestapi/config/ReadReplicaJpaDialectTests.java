@@ -0,0 +1,97 @@
+package com.dalibormucak.im.springrestapi.config;
+
+import com.dalibormucak.im.springrestapi.models.Product;
+import com.dalibormucak.im.springrestapi.repositories.ProductRepository;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+//    the replica is the primary database itself, so a product written on the primary can be read from it;
+//    the products are committed first, products written by the reading transaction itself are never cached
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(DataSourceRoutingConfig.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ReadReplicaJpaDialectTests {
+
+    private static EmbeddedPostgres embeddedPostgres;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @DynamicPropertySource
+    static void databaseProperties(DynamicPropertyRegistry registry) throws IOException {
+        if (embeddedPostgres == null) {
+            embeddedPostgres = EmbeddedPostgres.start();
+        }
+        registry.add("spring.datasource.url", () -> embeddedPostgres.getJdbcUrl("postgres", "postgres"));
+        registry.add("spring.datasource.username", () -> "postgres");
+        registry.add("spring.datasource.password", () -> "postgres");
+        registry.add("datasource.replicas.urls", () -> embeddedPostgres.getJdbcUrl("postgres", "postgres"));
+    }
+
+    @AfterAll
+    static void afterAll() throws IOException {
+        embeddedPostgres.close();
+    }
+
+    @Test
+    void testReadOnlyTransaction_putsNothingIntoSecondLevelCache() {
+
+        //given
+        Product product = productRepository.save(Product.builder()
+                .code("REPLICA001")
+                .name("Replicated")
+                .price_hrk(new BigDecimal("100.00"))
+                .price_eur(new BigDecimal("13.27"))
+                .is_available(true)
+                .build());
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        entityManagerFactory.getCache().evictAll();
+        statistics.clear();
+        TransactionTemplate readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+
+        //when
+        long replicaReadPuts;
+        long primaryReadPuts;
+        try {
+            readOnlyTransaction.execute(status -> productRepository.findById(product.getId()));
+            readOnlyTransaction.execute(status -> productRepository.findByCode(product.getCode()));
+            replicaReadPuts = statistics.getSecondLevelCachePutCount() + statistics.getNaturalIdCachePutCount();
+            new TransactionTemplate(transactionManager).execute(status -> productRepository.findById(product.getId()));
+            primaryReadPuts = statistics.getSecondLevelCachePutCount() - replicaReadPuts;
+        } finally {
+            productRepository.deleteAllInBatch(List.of(product));
+        }
+
+        //then
+        assertThat(replicaReadPuts).isZero();
+        assertThat(primaryReadPuts).isOne();
+    }
+}
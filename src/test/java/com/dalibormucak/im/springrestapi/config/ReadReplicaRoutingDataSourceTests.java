@@ -0,0 +1,135 @@
+package com.dalibormucak.im.springrestapi.config;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+//    the primary and the two replicas are stand-ins: databases of the same embedded PostgreSQL server,
+//    told apart by their names
+class ReadReplicaRoutingDataSourceTests {
+
+    private static EmbeddedPostgres embeddedPostgres;
+
+    private HikariDataSource primary;
+    private ReadReplicaRoutingDataSource routingDataSource;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate readOnlyTransaction;
+    private TransactionTemplate transaction;
+
+    @BeforeAll
+    static void beforeAll() throws IOException {
+        embeddedPostgres = EmbeddedPostgres.start();
+        JdbcTemplate postgres = new JdbcTemplate(embeddedPostgres.getPostgresDatabase());
+        postgres.execute("CREATE DATABASE replica_1");
+        postgres.execute("CREATE DATABASE replica_2");
+    }
+
+    @BeforeEach
+    void beforeEach() {
+        primary = pool("postgres");
+        routingDataSource = new ReadReplicaRoutingDataSource(primary, List.of(
+                new ReadReplicaRoutingDataSource.Replica("replica-1", pool("replica_1")),
+                new ReadReplicaRoutingDataSource.Replica("replica-2", pool("replica_2"))), 1);
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(routingDataSource);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        transaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+    }
+
+    @AfterEach
+    void afterEach() throws IOException {
+        setAllowConnections("replica_1", true);
+        setAllowConnections("replica_2", true);
+        routingDataSource.close();
+        primary.close();
+    }
+
+    @AfterAll
+    static void afterAll() throws IOException {
+        embeddedPostgres.close();
+    }
+
+    @Test
+    void testReadOnlyTransactions_routedToReplicasInTurn() {
+
+        //when
+        List<String> readDatabases = readDatabases(4);
+        String writeDatabase = transaction.execute(status -> currentDatabase());
+        String nonTransactionalDatabase = currentDatabase();
+
+        //then
+        assertThat(readDatabases).containsExactly("replica_1", "replica_2", "replica_1", "replica_2");
+        assertThat(writeDatabase).isEqualTo("postgres");
+        assertThat(nonTransactionalDatabase).isEqualTo("postgres");
+    }
+
+    @Test
+    void testReadOnlyTransactions_skipUnhealthyReplicas() {
+
+        //given
+        setAllowConnections("replica_1", false);
+        routingDataSource.checkReplicas();
+
+        //when
+        List<String> oneReplicaDown = readDatabases(3);
+        setAllowConnections("replica_2", false);
+        routingDataSource.checkReplicas();
+        List<String> allReplicasDown = readDatabases(2);
+        setAllowConnections("replica_1", true);
+        routingDataSource.checkReplicas();
+        List<String> oneReplicaBack = readDatabases(2);
+
+        //then
+        assertThat(oneReplicaDown).containsOnly("replica_2");
+        assertThat(allReplicasDown).containsOnly("postgres");
+        assertThat(oneReplicaBack).containsOnly("replica_1");
+    }
+
+    private List<String> readDatabases(int transactions) {
+        List<String> databases = new ArrayList<>();
+        for (int i = 0; i < transactions; i++) {
+            databases.add(readOnlyTransaction.execute(status -> currentDatabase()));
+        }
+        return databases;
+    }
+
+    private String currentDatabase() {
+        return jdbcTemplate.queryForObject("SELECT current_database()", String.class);
+    }
+
+//    a database that does not allow connections stands in for a replica that is down
+    private static void setAllowConnections(String database, boolean allowConnections) {
+        JdbcTemplate postgres = new JdbcTemplate(embeddedPostgres.getPostgresDatabase());
+        postgres.execute("ALTER DATABASE " + database + " ALLOW_CONNECTIONS " + allowConnections);
+        if (!allowConnections) {
+            postgres.queryForList("SELECT pg_terminate_backend(pid) FROM pg_stat_activity WHERE datname = ?",
+                    database);
+        }
+    }
+
+    private static HikariDataSource pool(String database) {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(embeddedPostgres.getJdbcUrl("postgres", database));
+        config.setPoolName(database);
+        config.setMaximumPoolSize(2);
+        config.setConnectionTimeout(250);
+        return new HikariDataSource(config);
+    }
+}
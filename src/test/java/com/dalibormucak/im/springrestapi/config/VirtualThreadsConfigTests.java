@@ -0,0 +1,42 @@
+package com.dalibormucak.im.springrestapi.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class VirtualThreadsConfigTests {
+
+    private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+            .withUserConfiguration(VirtualThreadsConfig.class);
+
+    @Test
+    void testVirtualThreads_failStartupOnHikariCP4() {
+
+        //given
+        ApplicationContextRunner enabledContextRunner = contextRunner
+                .withPropertyValues("spring.threads.virtual.enabled=true");
+
+        //when
+        enabledContextRunner.run(context -> {
+
+            //then
+            assertThat(context).hasFailed();
+            assertThat(context.getStartupFailure()).getRootCause()
+                    .isInstanceOf(IllegalStateException.class)
+                    .hasMessageStartingWith("spring.threads.virtual.enabled=true requires HikariCP 5.1 or newer, " +
+                            "HikariCP 4.0.3 livelocks");
+        });
+    }
+
+    @Test
+    void testVirtualThreads_disabledByDefault() {
+
+        //when
+        contextRunner.run(context -> {
+
+            //then
+            assertThat(context).hasNotFailed().doesNotHaveBean("virtualThreadExecutor");
+        });
+    }
+}
@@ -0,0 +1,94 @@
+package com.dalibormucak.im.springrestapi.repositories;
+
+import com.dalibormucak.im.springrestapi.config.DataSourceRoutingConfig;
+import com.dalibormucak.im.springrestapi.models.PriceRecalculation;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+//    the replica is a stand-in database of the same embedded PostgreSQL server that has not received
+//    the progress row yet; the progress is committed on the primary first
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(DataSourceRoutingConfig.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class PriceRecalculationRepositoryTests {
+
+    private static EmbeddedPostgres embeddedPostgres;
+
+    @Autowired
+    private PriceRecalculationRepository priceRecalculationRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @DynamicPropertySource
+    static void databaseProperties(DynamicPropertyRegistry registry) throws IOException {
+        if (embeddedPostgres == null) {
+            embeddedPostgres = EmbeddedPostgres.start();
+            new JdbcTemplate(embeddedPostgres.getPostgresDatabase()).execute("CREATE DATABASE replica");
+            new JdbcTemplate(embeddedPostgres.getDatabase("postgres", "replica")).execute(
+                    "CREATE TABLE price_recalculation (currency VARCHAR(3) PRIMARY KEY, " +
+                    "exchange_rate DECIMAL(12, 6) NOT NULL, last_product_id INTEGER NOT NULL, " +
+                    "updated_products BIGINT NOT NULL, started_at TIMESTAMP NOT NULL, finished_at TIMESTAMP)");
+        }
+        registry.add("spring.datasource.url", () -> embeddedPostgres.getJdbcUrl("postgres", "postgres"));
+        registry.add("spring.datasource.username", () -> "postgres");
+        registry.add("spring.datasource.password", () -> "postgres");
+        registry.add("datasource.replicas.urls", () -> embeddedPostgres.getJdbcUrl("postgres", "replica"));
+    }
+
+    @AfterAll
+    static void afterAll() throws IOException {
+        embeddedPostgres.close();
+    }
+
+    @Test
+    void testFindById_readOnPrimary() {
+
+        //given
+        PriceRecalculation recalculation = PriceRecalculation.start("EUR", new BigDecimal("7.534500"),
+                Instant.now());
+        recalculation.setLast_product_id(1000);
+        recalculation.setUpdated_products(998L);
+        priceRecalculationRepository.save(recalculation);
+        TransactionTemplate readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+
+        //when
+        Optional<PriceRecalculation> progress;
+        List<PriceRecalculation> replicaProgress;
+        try {
+            progress = priceRecalculationRepository.findById("EUR");
+            replicaProgress = readOnlyTransaction.execute(status -> priceRecalculationRepository.findAll());
+        } finally {
+            priceRecalculationRepository.deleteById("EUR");
+        }
+
+        //then
+        assertThat(progress).hasValueSatisfying(found -> {
+            assertThat(found.getLast_product_id()).isEqualTo(1000);
+            assertThat(found.getUpdated_products()).isEqualTo(998L);
+        });
+        assertThat(replicaProgress).isEmpty();
+    }
+}
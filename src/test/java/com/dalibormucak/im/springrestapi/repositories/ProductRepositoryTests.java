@@ -0,0 +1,243 @@
+package com.dalibormucak.im.springrestapi.repositories;
+
+import com.dalibormucak.im.springrestapi.exceptions.ConcurrentProductWriteException;
+import com.dalibormucak.im.springrestapi.models.Product;
+import com.dalibormucak.im.springrestapi.models.ProductCursor;
+import com.dalibormucak.im.springrestapi.models.ProductFilter;
+import com.dalibormucak.im.springrestapi.models.ProductMergeResult;
+import com.dalibormucak.im.springrestapi.models.ProductSortField;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Sort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+//    the repository queries on an embedded PostgreSQL with the schema of the application,
+//    every test runs in a transaction that is rolled back
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class ProductRepositoryTests {
+
+    private static EmbeddedPostgres embeddedPostgres;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @DynamicPropertySource
+    static void databaseProperties(DynamicPropertyRegistry registry) throws IOException {
+        if (embeddedPostgres == null) {
+            embeddedPostgres = EmbeddedPostgres.start();
+        }
+        registry.add("spring.datasource.url", () -> embeddedPostgres.getJdbcUrl("postgres", "postgres"));
+        registry.add("spring.datasource.username", () -> "postgres");
+        registry.add("spring.datasource.password", () -> "postgres");
+    }
+
+    @AfterAll
+    static void afterAll() throws IOException {
+        embeddedPostgres.close();
+    }
+
+    @Test
+    void testFindPage_withNullSortValues() {
+
+        //given
+        List<Product> products = productRepository.saveAllAndFlush(List.of(
+                product("NULLNAME01", null),
+                product("BANANA0001", "Banana"),
+                product("NULLNAME02", null),
+                product("APPLE00001", "Apple"),
+                product("BANANA0002", "Banana")));
+        List<String> ascending = List.of("APPLE00001", "BANANA0001", "BANANA0002", "NULLNAME01", "NULLNAME02");
+        List<String> descending = List.of("NULLNAME02", "NULLNAME01", "BANANA0002", "BANANA0001", "APPLE00001");
+
+        //when
+        List<String> ascendingCodes = readAllPages(ProductSortField.NAME, Sort.Direction.ASC, 2);
+        List<String> descendingCodes = readAllPages(ProductSortField.NAME, Sort.Direction.DESC, 2);
+
+        //then
+        assertThat(products).hasSize(5);
+        assertThat(ascendingCodes).isEqualTo(ascending);
+        assertThat(descendingCodes).isEqualTo(descending);
+    }
+
+//    the products are committed first, products written by the reading transaction itself are never cached
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void testStreamAll_bypassesSecondLevelCache() {
+
+        //given
+        List<Product> products = productRepository.saveAll(List.of(product("STREAM0001", "Streamed"),
+                product("STREAM0002", null)));
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        entityManagerFactory.getCache().evictAll();
+
+        //when
+        Long streamed;
+        try {
+            streamed = new TransactionTemplate(transactionManager).execute(status -> {
+                try (Stream<Product> streamedProducts = productRepository.streamAll()) {
+                    return streamedProducts.count();
+                }
+            });
+        } finally {
+            productRepository.deleteAllInBatch(products);
+        }
+
+        //then
+        assertThat(streamed).isEqualTo(2);
+        assertThat(statistics.getSecondLevelCachePutCount()).isZero();
+    }
+
+    @Test
+    void testUpsertByCode_updateTakesNoId() {
+
+        //given
+        Product created = productRepository.upsertByCode(product("UPSERT0001", "Created"));
+        entityManager.clear();
+        long sequenceValue = productIdSequenceValue();
+
+        //when
+        Product updated = productRepository.upsertByCode(product("UPSERT0001", "Updated"));
+
+        //then
+        assertThat(created.getVersion()).isZero();
+        assertThat(updated.getId()).isEqualTo(created.getId());
+        assertThat(updated.getName()).isEqualTo("Updated");
+        assertThat(updated.getVersion()).isEqualTo(1L);
+        assertThat(productIdSequenceValue()).isEqualTo(sequenceValue);
+    }
+
+//    a trigger skipping the update of the product stands in for a concurrently inserted product the update cannot
+//    see, so the insert runs into the existing code every time
+    @Test
+    void testUpsertByCode_conflictingEveryTime() {
+
+        //given
+        productRepository.saveAndFlush(product("CONFLICT01", "Existing"));
+        entityManager.createNativeQuery("CREATE FUNCTION skip_product_update() RETURNS trigger " +
+                "AS $$ BEGIN RETURN NULL; END $$ LANGUAGE plpgsql").executeUpdate();
+        entityManager.createNativeQuery("CREATE TRIGGER skip_product_update BEFORE UPDATE ON product " +
+                "FOR EACH ROW EXECUTE FUNCTION skip_product_update()").executeUpdate();
+        long sequenceValue = productIdSequenceValue();
+
+        //when
+        Throwable thrown = catchThrowable(() -> productRepository.upsertByCode(product("CONFLICT01", "Updated")));
+
+        //then
+        assertThat(thrown).isInstanceOf(ConcurrentProductWriteException.class)
+                .hasMessage("Product with code CONFLICT01 is being written concurrently");
+        assertThat(productIdSequenceValue()).isEqualTo(sequenceValue + 3 * 50);
+    }
+
+//    every import commits on its own, the staging table is dropped at the end of the import transaction
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void testImportProducts_reimportTakesNoIds() throws IOException {
+
+        //given
+        List<Product> products = List.of(product("IMPORT0001", "Imported"), product("IMPORT0002", null));
+        Product changedProduct = product("IMPORT0002", "Changed");
+
+        //when
+        ProductMergeResult firstImport;
+        ProductMergeResult sameImport;
+        ProductMergeResult changedImport;
+        long sequenceValue;
+        long reimportedSequenceValue;
+        try {
+            firstImport = productRepository.importProducts(importSource(products));
+            sequenceValue = productIdSequenceValue();
+            sameImport = productRepository.importProducts(importSource(products));
+            changedImport = productRepository.importProducts(
+                    importSource(List.of(products.get(0), changedProduct)));
+            reimportedSequenceValue = productIdSequenceValue();
+        } finally {
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                entityManager.createNativeQuery("DELETE FROM product_change WHERE product ->> 'code' LIKE 'IMPORT%'")
+                        .executeUpdate();
+                entityManager.createNativeQuery("DELETE FROM product WHERE code LIKE 'IMPORT%'").executeUpdate();
+            });
+        }
+
+        //then
+        assertThat(firstImport.getCreated()).isEqualTo(2);
+        assertThat(sameImport.getCreated()).isZero();
+        assertThat(sameImport.getUpdated()).isZero();
+        assertThat(changedImport.getCreated()).isZero();
+        assertThat(changedImport.getUpdated()).isOne();
+        assertThat(reimportedSequenceValue).isEqualTo(sequenceValue);
+    }
+
+//    follows the cursors through every page like a client, the cursor is encoded and decoded on the way
+    private List<String> readAllPages(ProductSortField sortField, Sort.Direction direction, int pageSize) {
+        ProductFilter filter = new ProductFilter(null, null, null);
+        List<String> codes = new ArrayList<>();
+        ProductCursor after = null;
+        while (true) {
+            List<Product> page = productRepository.findPage(filter, sortField, direction, after, pageSize);
+            codes.addAll(page.stream().map(Product::getCode).collect(Collectors.toList()));
+            if (page.size() < pageSize) {
+                return codes;
+            }
+            String cursor = ProductCursor.after(page.get(pageSize - 1), sortField, direction).encode();
+            after = ProductCursor.decode(cursor, sortField, direction);
+        }
+    }
+
+    private static ProductRepositoryCustom.ImportSource importSource(List<Product> products) {
+        return writer -> {
+            for (int i = 0; i < products.size(); i++) {
+                writer.write(i + 1, products.get(i));
+            }
+        };
+    }
+
+    private long productIdSequenceValue() {
+        return ((Number) entityManager.createNativeQuery("SELECT last_value FROM product_id_seq")
+                .getSingleResult()).longValue();
+    }
+
+    private static Product product(String code, String name) {
+        return Product.builder()
+                .code(code)
+                .name(name)
+                .price_hrk(new BigDecimal("100.00"))
+                .price_eur(new BigDecimal("13.27"))
+                .is_available(true)
+                .build();
+    }
+}
@@ -0,0 +1,94 @@
+package com.dalibormucak.im.springrestapi.repositories;
+
+import com.dalibormucak.im.springrestapi.models.Product;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.r2dbc.DataR2dbcTest;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+//    the R2DBC repository on an embedded PostgreSQL; the reactive profile does not create the schema,
+//    so the tables are created here as Hibernate creates them in the default profile
+@DataR2dbcTest
+@ActiveProfiles("reactive")
+class ReactiveProductRepositoryTests {
+
+    private static EmbeddedPostgres embeddedPostgres;
+
+    @Autowired
+    private ReactiveProductRepository productRepository;
+
+    @Autowired
+    private DatabaseClient databaseClient;
+
+    @DynamicPropertySource
+    static void databaseProperties(DynamicPropertyRegistry registry) throws IOException {
+        if (embeddedPostgres == null) {
+            embeddedPostgres = EmbeddedPostgres.start();
+            JdbcTemplate postgres = new JdbcTemplate(embeddedPostgres.getPostgresDatabase());
+            postgres.execute("CREATE SEQUENCE product_id_seq INCREMENT BY 50");
+            postgres.execute("CREATE SEQUENCE product_change_id_seq INCREMENT BY 50");
+            postgres.execute("CREATE TABLE product (id INTEGER PRIMARY KEY, code VARCHAR(10) UNIQUE, " +
+                    "name VARCHAR(32), price_hrk DECIMAL(12, 2), price_eur DECIMAL(12, 2), " +
+                    "description VARCHAR(128), is_available BOOLEAN NOT NULL, version BIGINT NOT NULL DEFAULT 0)");
+            postgres.execute("CREATE TABLE product_change (id BIGINT PRIMARY KEY, " +
+                    "tx_id xid8 NOT NULL DEFAULT pg_current_xact_id(), type VARCHAR(7) NOT NULL, " +
+                    "product_id INTEGER NOT NULL, product_version BIGINT, product jsonb, " +
+                    "changed_at TIMESTAMP NOT NULL)");
+        }
+        registry.add("spring.r2dbc.url", () -> "r2dbc:postgresql://localhost:" + embeddedPostgres.getPort()
+                + "/postgres");
+        registry.add("spring.r2dbc.username", () -> "postgres");
+        registry.add("spring.r2dbc.password", () -> "postgres");
+    }
+
+    @AfterAll
+    static void afterAll() throws IOException {
+        embeddedPostgres.close();
+    }
+
+    @Test
+    void testWrites_insertProductChanges() {
+
+        //given
+        Product product = Product.builder()
+                .code("REACTIVE01")
+                .price_hrk(new BigDecimal("100.00"))
+                .price_eur(new BigDecimal("13.27"))
+                .is_available(true)
+                .build();
+
+        //when
+        Product created = productRepository.create(product).block();
+        Product updated = productRepository.updateVersioned(created.toBuilder().name("Updated").build()).block();
+        Throwable staleUpdate = catchThrowable(() -> productRepository.updateVersioned(created).block());
+        productRepository.deleteVersioned(updated).block();
+
+        //then
+        assertThat(created.getVersion()).isZero();
+        assertThat(updated.getVersion()).isEqualTo(1L);
+        assertThat(staleUpdate).isInstanceOf(OptimisticLockingFailureException.class);
+        List<String> changes = databaseClient.sql("SELECT type, product_version, product ->> 'name' AS name " +
+                        "FROM product_change WHERE product_id = :productId ORDER BY id")
+                .bind("productId", created.getId())
+                .map(row -> row.get("type", String.class) + " " + row.get("product_version", Long.class)
+                        + " " + row.get("name", String.class))
+                .all()
+                .collectList()
+                .block();
+        assertThat(changes).containsExactly("CREATED 0 null", "UPDATED 1 Updated", "DELETED null null");
+    }
+}
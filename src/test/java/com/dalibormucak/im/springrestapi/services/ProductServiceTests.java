@@ -0,0 +1,120 @@
+package com.dalibormucak.im.springrestapi.services;
+
+import com.dalibormucak.im.springrestapi.models.Product;
+import com.dalibormucak.im.springrestapi.models.ProductChange;
+import com.dalibormucak.im.springrestapi.models.dtos.ProductDTO;
+import com.dalibormucak.im.springrestapi.repositories.ProductChangeRepository;
+import com.dalibormucak.im.springrestapi.repositories.ProductRepository;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.autoconfigure.validation.ValidationAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+
+//    the writes of the service on an embedded PostgreSQL with a failing outbox; the tests do not run
+//    in a transaction of their own, so the product write is only rolled back by the transaction of the service
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({ProductService.class, ProgrammaticallyValidatingService.class, ProductPatcher.class})
+@ImportAutoConfiguration({JacksonAutoConfiguration.class, ValidationAutoConfiguration.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ProductServiceTests {
+
+    private static EmbeddedPostgres embeddedPostgres;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @MockBean
+    private ExchangeRateProvider exchangeRateProvider;
+
+    @MockBean
+    private ProductChangeRepository productChangeRepository;
+
+    @DynamicPropertySource
+    static void databaseProperties(DynamicPropertyRegistry registry) throws IOException {
+        if (embeddedPostgres == null) {
+            embeddedPostgres = EmbeddedPostgres.start();
+        }
+        registry.add("spring.datasource.url", () -> embeddedPostgres.getJdbcUrl("postgres", "postgres"));
+        registry.add("spring.datasource.username", () -> "postgres");
+        registry.add("spring.datasource.password", () -> "postgres");
+    }
+
+    @AfterAll
+    static void afterAll() throws IOException {
+        embeddedPostgres.close();
+    }
+
+    @Test
+    void testUpsertProductByCode_rolledBackWithOutbox() {
+
+        //given
+        given(exchangeRateProvider.getMediumRate("EUR")).willReturn(new BigDecimal("7.53450"));
+        given(productChangeRepository.save(any(ProductChange.class)))
+                .willThrow(new DataIntegrityViolationException("product_change"));
+        ProductDTO productDTO = new ProductDTO("ROLLBACK01", "Rolled back", new BigDecimal("100.00"), null, true);
+
+        //when
+        Throwable thrown = catchThrowable(() -> productService.upsertProductByCode("ROLLBACK01", productDTO));
+
+        //then
+        assertThat(thrown).isInstanceOf(DataIntegrityViolationException.class);
+        assertThat(countProducts("ROLLBACK01")).isZero();
+    }
+
+    @Test
+    void testDeleteProductByCode_rolledBackWithOutbox() {
+
+        //given
+        Product product = productRepository.save(Product.builder()
+                .code("ROLLBACK02")
+                .name("Kept")
+                .price_hrk(new BigDecimal("100.00"))
+                .price_eur(new BigDecimal("13.27"))
+                .is_available(true)
+                .build());
+        given(productChangeRepository.save(any(ProductChange.class)))
+                .willThrow(new DataIntegrityViolationException("product_change"));
+
+        //when
+        Throwable thrown = catchThrowable(() -> productService.deleteProductByCode("ROLLBACK02"));
+        Integer remaining = countProducts("ROLLBACK02");
+        productRepository.deleteAllInBatch(List.of(product));
+
+        //then
+        assertThat(thrown).isInstanceOf(DataIntegrityViolationException.class);
+        assertThat(remaining).isOne();
+    }
+
+    private Integer countProducts(String code) {
+        return jdbcTemplate.queryForObject("SELECT count(*) FROM product WHERE code = ?", Integer.class, code);
+    }
+}